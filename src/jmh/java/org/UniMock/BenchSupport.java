@@ -0,0 +1,61 @@
+package org.UniMock;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Общие данные для бенчмарков: шаблоны во временной папке и тела запросов.
+ * Шаблоны грузятся обычным AppLogic.preLaunch, чтобы мерить тот же путь, что и в сервере.
+ */
+final class BenchSupport {
+
+    private BenchSupport() {
+    }
+
+    /** Записывает шаблоны (имя файла → текст) во временную папку и загружает их как при старте. */
+    static void loadTemplates(Map<String, String> files) {
+        try {
+            Path dir = Files.createTempDirectory("unimock-bench");
+            for (Map.Entry<String, String> f : files.entrySet()) {
+                Files.writeString(dir.resolve(f.getKey()), f.getValue(), StandardCharsets.UTF_8);
+            }
+            // конфиг рядом с шаблонами разбирался бы как шаблон
+            Path config = Files.createTempFile("unimock-bench", ".properties");
+            Files.writeString(config,
+                    "templates.path=" + dir.toString().replace('\\', '/') + "\n" +
+                    "templates.watch=false\n");
+            AppLogic.preLaunch(new String[]{"config=" + config});
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** JSON с массивом items из n элементов; user идёт после массива, чтобы путь был в конце тела. */
+    static String json(int items) {
+        StringBuilder sb = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i)
+              .append("\",\"tags\":[\"a\",\"b\"],\"price\":").append(i * 10 + 0.5).append('}');
+        }
+        return sb.append("],\"user\":{\"name\":\"alice\",\"id\":42},\"flag\":true}").toString();
+    }
+
+    /** XML той же структуры, что и json(items). */
+    static String xml(int items) {
+        StringBuilder sb = new StringBuilder("<r><items>");
+        for (int i = 0; i < items; i++) {
+            sb.append("<item id=\"").append(i).append("\"><name>item-").append(i)
+              .append("</name><price>").append(i * 10 + 0.5).append("</price></item>");
+        }
+        return sb.append("</items><user id=\"42\"><name>alice</name></user></r>").toString();
+    }
+
+    // Около 100 байт и около 64 КБ — по разные стороны body.streamingThreshold
+    static final int SMALL_ITEMS = 1;
+    static final int LARGE_ITEMS = 800;
+}
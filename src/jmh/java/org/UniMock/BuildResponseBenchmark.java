@@ -0,0 +1,62 @@
+package org.UniMock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный путь AppLogic.buildResponse без HTTP: маршрутизация, переменные, рендер тела.
+ * Шаблоны загружаются из файлов, как при старте сервера.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildResponseBenchmark {
+
+    @Param({"static", "hello", "path", "json", "jsonLarge", "xml"})
+    public String scenario;
+
+    private String method;
+    private String endpoint;
+    private RequestInput input;
+
+    @Setup
+    public void setup() {
+        Map<String, String> files = new HashMap<>();
+        files.put("static.txt", "GET /health\nSuccess body:\n{\"status\":\"UP\"}\n");
+        files.put("hello.txt", "GET /hello\nVars:\nname: reqParam; name\nagent: reqHeader; User-Agent\n" +
+                "Success body:\nHello, $name$! You are using $agent$.\n");
+        files.put("path.txt", "GET /users/:id/orders/:orderId\nVars:\nu: reqPath; id\no: reqPath; orderId\n" +
+                "Success body:\n{\"user\":\"$u$\",\"order\":\"$o$\"}\n");
+        files.put("json.txt", "POST /orders\nVars:\nname: jsonParse; user/name\nuid: jsonParse; user/id\n" +
+                "first: jsonParse; items/0/name\nn: randomNum; 1-100000\n" +
+                "Success body:\n{\"order\":$n$,\"user\":\"$name$\",\"uid\":$uid$,\"first\":\"$first$\"}\n");
+        files.put("xml.txt", "POST /soap\nVars:\nname: xmlParse; /r/user/name\nid: xmlParse; /r/user/@id\n" +
+                "Success body:\n<ok name=\"$name$\" id=\"$id$\"/>\n");
+        BenchSupport.loadTemplates(files);
+
+        Map<String, String> headers = Map.of("User-Agent", "bench/1.0", "Content-Type", "application/json");
+        Map<String, String> params = Map.of("name", "alice");
+        String body = "";
+        switch (scenario) {
+            case "static":    method = "GET";  endpoint = "/health"; break;
+            case "hello":     method = "GET";  endpoint = "/hello"; break;
+            case "path":      method = "GET";  endpoint = "/users/42/orders/1001"; break;
+            case "json":      method = "POST"; endpoint = "/orders"; body = BenchSupport.json(BenchSupport.SMALL_ITEMS); break;
+            case "jsonLarge": method = "POST"; endpoint = "/orders"; body = BenchSupport.json(BenchSupport.LARGE_ITEMS); break;
+            case "xml":       method = "POST"; endpoint = "/soap"; body = BenchSupport.xml(BenchSupport.SMALL_ITEMS); break;
+            default: throw new IllegalArgumentException(scenario);
+        }
+        input = RequestInput.of(body, headers, params);
+    }
+
+    @Benchmark
+    public ResponseData buildResponse() {
+        return AppLogic.buildResponse(method, endpoint, input);
+    }
+}
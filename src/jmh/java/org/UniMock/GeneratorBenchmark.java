@@ -0,0 +1,81 @@
+package org.UniMock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Каждый тип переменной на маленьком (~100 байт) и большом (~64 КБ) теле.
+ * На каждый вызов создаётся новый RequestContext, поэтому в замер входит и разбор тела,
+ * как у первой переменной шаблона в реальном запросе. Большое тело jsonParse/xmlParse
+ * читается потоково (StreamingExtractor), маленькое — деревом/DOM.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({"jsonParse", "xmlParse", "regexParse", "randomNum", "randomString",
+            "fixed", "reqHeader", "reqParam", "reqPath", "uuid", "sequence", "timestamp", "fullName", "email"})
+    public String type;
+
+    @Param({"small", "large"})
+    public String size;
+
+    private VarDef var;
+    private Template template;
+    private RequestInput input;
+
+    private final Map<String, String> headers = Map.of("User-Agent", "bench/1.0", "Accept", "*/*");
+    private final Map<String, String> params = Map.of("name", "alice", "page", "2");
+    private final Map<String, String> pathVars = Map.of("id", "12345");
+
+    @Setup
+    public void setup() {
+        int items = "large".equals(size) ? BenchSupport.LARGE_ITEMS : BenchSupport.SMALL_ITEMS;
+        String body = "xmlParse".equals(type) ? BenchSupport.xml(items) : BenchSupport.json(items);
+        input = RequestInput.of(body, headers, params);
+
+        var = new VarDef();
+        var.name = "v";
+        var.type = type;
+        var.condition = condition(type);
+        var.compiled = VarsGenerator.compile(var.type, var.condition);
+
+        template = new Template();
+        template.bodyVars.put(var.name, var);
+        template.streaming = StreamingExtractor.forVars(List.of(var));
+        template.inputs = RequestInput.partsFor(List.of(var));
+    }
+
+    private static String condition(String type) {
+        switch (type) {
+            case "jsonParse":    return "user/name";
+            case "xmlParse":     return "/r/user/name";
+            case "regexParse":   return "\"user\":\\{\"name\":\"([^\"]+)\"";
+            case "randomNum":    return "1-1000";
+            case "randomString": return "len=16";
+            case "fixed":        return "ok";
+            case "reqHeader":    return "User-Agent";
+            case "reqParam":     return "name";
+            case "reqPath":      return "id";
+            case "uuid":         return "";
+            case "sequence":     return "start=1";
+            case "timestamp":    return "iso; UTC";
+            case "fullName":     return "";
+            case "email":        return "";
+            default: throw new IllegalArgumentException(type);
+        }
+    }
+
+    @Benchmark
+    public String generate() {
+        RequestContext ctx = new RequestContext(input, pathVars, template);
+        return VarsGenerator.generate(var, ctx);
+    }
+}
@@ -0,0 +1,54 @@
+package org.UniMock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подстановка переменных в тело ответа (CompiledBody.render):
+ * маленький JSON с тремя слотами и ~40 КБ тела с 600 слотами, в том числе с кириллицей.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"small", "large"})
+    public String size;
+
+    @Param({"ascii", "utf8"})
+    public String values;
+
+    private CompiledBody body;
+    private final Map<String, String> vars = new HashMap<>();
+
+    @Setup
+    public void setup() {
+        String item = "{\"id\":\"$id$\",\"name\":\"$name$\",\"status\":\"active\",\"city\":\"$city$\"}";
+        String text;
+        if ("large".equals(size)) {
+            StringBuilder sb = new StringBuilder("{\"items\":[");
+            for (int i = 0; i < 200; i++) sb.append(i > 0 ? "," : "").append(item);
+            text = sb.append("]}").toString();
+        } else {
+            text = item;
+        }
+        body = CompiledBody.compile(text, Set.of("id", "name", "city"));
+
+        boolean utf8 = "utf8".equals(values);
+        vars.put("id", "1234567890");
+        vars.put("name", utf8 ? "Алиса" : "alice");
+        vars.put("city", utf8 ? "Москва" : "Moscow");
+    }
+
+    @Benchmark
+    public byte[] render() {
+        return body.render(vars);
+    }
+}
@@ -0,0 +1,74 @@
+package org.UniMock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск шаблона по методу и пути при 10 / 1k / 10k шаблонах.
+ * Треть маршрутов статические, треть с :id, треть с *.
+ *
+ * cached   — 1024 «горячих» пути, после прогрева почти всегда попадание в EndpointCache;
+ * uncached — каждый запрос с новым id: промах кэша, обход RouteTrie и вытеснение.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int templates;
+
+    private String[] hotPaths;
+    private int next;
+    private long uniqueId;
+
+    @Setup
+    public void setup() {
+        Map<String, String> files = new HashMap<>();
+        for (int i = 0; i < templates; i++) {
+            files.put("t" + i + ".txt", "GET " + route(i) + "\nSuccess body:\n{\"n\":" + i + "}\n");
+        }
+        BenchSupport.loadTemplates(files);
+
+        hotPaths = new String[1024];
+        for (int i = 0; i < hotPaths.length; i++) {
+            int t = (int) ((i * 2654435761L) % templates);
+            hotPaths[i] = path(t, i);
+        }
+    }
+
+    private static String route(int i) {
+        switch (i % 3) {
+            case 0:  return "/api/v1/svc" + i + "/status";
+            case 1:  return "/api/v1/svc" + i + "/users/:id";
+            default: return "/api/v1/svc" + i + "/files/*";
+        }
+    }
+
+    private static String path(int i, long id) {
+        switch (i % 3) {
+            case 0:  return "/api/v1/svc" + i + "/status";
+            case 1:  return "/api/v1/svc" + i + "/users/" + id;
+            default: return "/api/v1/svc" + i + "/files/dir/" + id + ".txt";
+        }
+    }
+
+    @Benchmark
+    public Object cached() {
+        return AppLogic.match("GET", hotPaths[next++ & (hotPaths.length - 1)]);
+    }
+
+    @Benchmark
+    public Object uncached() {
+        long id = ++uniqueId;
+        // только маршруты с :id (i % 3 == 1): у статических каждый путь сразу попадает в кэш
+        int t = (int) ((id * 2654435761L) % (templates / 3)) * 3 + 1;
+        return AppLogic.match("GET", path(t, id));
+    }
+}
@@ -0,0 +1,140 @@
+package org.UniMock;
+
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Журнал запросов вне горячего пути.
+ *
+ * Потоки Jetty только копируют несколько полей в заранее выделенную ячейку
+ * ограниченного кольцевого буфера (без блокировок, схема Вьюкова), а форматирование
+ * и запись в логгер "access" делает один фоновый поток пачками.
+ * Если буфер полон: ACCESS_LOG_ON_FULL=drop — запись отбрасывается и считается
+ * в droppedCount(), block — поток запроса ждёт освобождения места.
+ * Ошибка записи одной строки теряет только её (тоже в droppedCount()), ячейка освобождается всегда.
+ */
+public class AccessLog {
+
+    private static final org.slf4j.Logger access = LoggerFactory.getLogger("access");
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(AccessLog.class);
+    private static final int BATCH = 256;
+
+    private static volatile AccessLog instance;
+
+    private final Entry[] slots;
+    private final AtomicLongArray sequence;
+    private final int mask;
+    private final boolean blockWhenFull;
+    private final AtomicLong tail = new AtomicLong();   // следующая позиция для записи (производители)
+    private long head;                                  // следующая позиция для чтения (только фоновый поток)
+    private final LongAdder dropped = new LongAdder();
+
+    private static final class Entry {
+        long timeMillis;
+        String method;
+        String uri;
+        int status;
+        long micros;
+        long delayMs;
+    }
+
+    private AccessLog(int capacity, boolean blockWhenFull) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;   // до степени двойки
+        this.slots = new Entry[size];
+        this.sequence = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.blockWhenFull = blockWhenFull;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Entry();
+            sequence.set(i, i);
+        }
+    }
+
+    /** Включает журнал и запускает фоновый поток записи. */
+    public static void start(int capacity, String onFull) {
+        AccessLog log = new AccessLog(capacity, "block".equalsIgnoreCase(onFull));
+        Thread writer = new Thread(log::drainLoop, "access-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        instance = log;
+    }
+
+    /** Запись одного запроса. Без журнала (accessLog.enabled=false) — ничего не делает. */
+    public static void record(String method, String uri, int status, long nanos, long delayMs) {
+        AccessLog log = instance;
+        if (log != null) log.offer(method, uri, status, nanos, delayMs);
+    }
+
+    public static long droppedCount() {
+        AccessLog log = instance;
+        return log != null ? log.dropped.sum() : 0;
+    }
+
+    private void offer(String method, String uri, int status, long nanos, long delayMs) {
+        long pos = claim();
+        while (pos < 0) {
+            if (!blockWhenFull) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.parkNanos(50_000);
+            pos = claim();
+        }
+        Entry e = slots[(int) pos & mask];
+        e.timeMillis = System.currentTimeMillis();
+        e.method = method;
+        e.uri = uri;
+        e.status = status;
+        e.micros = nanos / 1000;
+        e.delayMs = delayMs;
+        sequence.set((int) pos & mask, pos + 1);   // публикация ячейки для читателя
+    }
+
+    /** @return захваченная позиция или -1, если буфер полон */
+    private long claim() {
+        long pos = tail.get();
+        while (true) {
+            long seq = sequence.get((int) pos & mask);
+            long diff = seq - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) return pos;
+                pos = tail.get();
+            } else if (diff < 0) {
+                return -1;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    private void drainLoop() {
+        while (true) {
+            int n = 0;
+            while (n < BATCH) {
+                int idx = (int) head & mask;
+                if (sequence.get(idx) != head + 1) break;
+                Entry e = slots[idx];
+                try {
+                    access.info("{} {} {} {} {}us delay={}ms",
+                            Instant.ofEpochMilli(e.timeMillis), e.method, e.uri, e.status, e.micros, e.delayMs);
+                } catch (Exception ex) {
+                    // запись теряется, но ячейка освобождается — иначе читатель встанет на ней навсегда
+                    dropped.increment();
+                    logger.warn("Access log writer failed: {}", ex.getMessage());
+                } finally {
+                    e.method = null;
+                    e.uri = null;
+                    sequence.set(idx, head + slots.length);   // ячейка снова свободна
+                    head++;
+                    n++;
+                }
+            }
+            if (n == 0) LockSupport.parkNanos(1_000_000);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.UniMock;
-import org.apache.commons.text.StringSubstitutor;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
@@ -7,9 +8,10 @@ import java.nio.file.*;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.random.RandomGenerator;
+import java.util.stream.Collectors;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class AppLogic {
 
@@ -18,11 +20,37 @@ public class AppLogic {
     public static int THREAD_MAX = 50;
     public static int THREAD_MIN = 10;
     public static int THREAD_IDLE_TIMEOUT = 30000;
+    public static boolean THREAD_VIRTUAL = false;
+    public static int HTTP_ACCEPTORS = -1;              // -1 — по числу ядер, как решит Jetty
+    public static int HTTP_SELECTORS = -1;
+    public static long HTTP_IDLE_TIMEOUT = 3600000;     // как у коннектора Spark по умолчанию
+    public static int HTTP_ACCEPT_QUEUE_SIZE = 0;       // 0 — backlog ОС по умолчанию
+    public static int HTTP_REQUEST_HEADER_SIZE = 8192;
+    public static boolean HTTP_H2C = false;
+    public static int HTTP_H2_MAX_STREAMS = 128;
     public static String TEMPLATE_PATH = "templates/";
-
-    private static final Random random = new Random();
-    private static final Map<String, Template> templateCache = new ConcurrentHashMap<>();
-    private static final ConcurrentHashMap<String, Template> endpointCache = new ConcurrentHashMap<>();
+    public static String BODIES_PATH = "bodies/";
+    public static String DATASETS_PATH = "datasets/";
+    public static int ENDPOINT_CACHE_SIZE = 10000;
+    public static int STREAMING_THRESHOLD = 16384;
+    public static boolean TEMPLATE_WATCH = false;
+    public static boolean ACCESS_LOG = false;
+    public static int ACCESS_LOG_BUFFER = 65536;
+    public static String ACCESS_LOG_ON_FULL = "drop";
+    public static boolean RESPONSE_PRE_GZIP = false;
+    public static int RESPONSE_PRE_GZIP_MIN_SIZE = 1024;
+    public static int STATE_MAX_ENTRIES = 100000;
+    public static long STATE_TTL_SECONDS = 3600;
+    public static double BENCH_RPS = 1000;
+    public static long BENCH_DURATION_SECONDS = 30;
+    public static long BENCH_WARMUP_SECONDS = 5;
+    public static int BENCH_MAX_IN_FLIGHT = 10000;
+    private static final int MAX_REPORTED_ERRORS = 50;
+
+    // Текущий срез шаблонов; подменяется целиком при перезагрузке
+    private static volatile TemplateSnapshot snapshot = TemplateSnapshot.build(Map.of(), ENDPOINT_CACHE_SIZE);
+    // Маркер "шаблон не найден": промахи тоже кэшируются, чтобы поток 404 не гонял поиск заново
+    private static final RouteMatch NOT_FOUND = new RouteMatch(null, Map.of());
     private static final org. slf4j.Logger logger = LoggerFactory.getLogger(AppLogic.class);
 
 
@@ -51,42 +79,157 @@ public class AppLogic {
             THREAD_MAX = Integer.parseInt(props.getProperty("thread.max", String.valueOf(THREAD_MAX)));
             THREAD_MIN = Integer.parseInt(props.getProperty("thread.min", String.valueOf(THREAD_MIN)));
             THREAD_IDLE_TIMEOUT = Integer.parseInt(props.getProperty("thread.idleTimeout", String.valueOf(THREAD_IDLE_TIMEOUT)));
+            THREAD_VIRTUAL = Boolean.parseBoolean(props.getProperty("thread.virtual", String.valueOf(THREAD_VIRTUAL)));
+            HTTP_ACCEPTORS = Integer.parseInt(props.getProperty("http.acceptors", String.valueOf(HTTP_ACCEPTORS)));
+            HTTP_SELECTORS = Integer.parseInt(props.getProperty("http.selectors", String.valueOf(HTTP_SELECTORS)));
+            HTTP_IDLE_TIMEOUT = Long.parseLong(props.getProperty("http.idleTimeout", String.valueOf(HTTP_IDLE_TIMEOUT)));
+            HTTP_ACCEPT_QUEUE_SIZE = Integer.parseInt(props.getProperty("http.acceptQueueSize", String.valueOf(HTTP_ACCEPT_QUEUE_SIZE)));
+            HTTP_REQUEST_HEADER_SIZE = Integer.parseInt(props.getProperty("http.requestHeaderSize", String.valueOf(HTTP_REQUEST_HEADER_SIZE)));
+            HTTP_H2C = Boolean.parseBoolean(props.getProperty("http.h2c", String.valueOf(HTTP_H2C)));
+            HTTP_H2_MAX_STREAMS = Integer.parseInt(props.getProperty("http.h2.maxConcurrentStreams", String.valueOf(HTTP_H2_MAX_STREAMS)));
             TEMPLATE_PATH = props.getProperty("templates.path", TEMPLATE_PATH);
+            BODIES_PATH = props.getProperty("bodies.path", BODIES_PATH);
+            DATASETS_PATH = props.getProperty("datasets.path", DATASETS_PATH);
+            ENDPOINT_CACHE_SIZE = Integer.parseInt(props.getProperty("endpointCache.size", String.valueOf(ENDPOINT_CACHE_SIZE)));
+            STREAMING_THRESHOLD = Integer.parseInt(props.getProperty("body.streamingThreshold", String.valueOf(STREAMING_THRESHOLD)));
+            TEMPLATE_WATCH = Boolean.parseBoolean(props.getProperty("templates.watch", String.valueOf(TEMPLATE_WATCH)));
+            ACCESS_LOG = Boolean.parseBoolean(props.getProperty("accessLog.enabled", String.valueOf(ACCESS_LOG)));
+            ACCESS_LOG_BUFFER = Integer.parseInt(props.getProperty("accessLog.bufferSize", String.valueOf(ACCESS_LOG_BUFFER)));
+            ACCESS_LOG_ON_FULL = props.getProperty("accessLog.onFull", ACCESS_LOG_ON_FULL).trim();
+            RESPONSE_PRE_GZIP = Boolean.parseBoolean(props.getProperty("response.preGzip", String.valueOf(RESPONSE_PRE_GZIP)));
+            RESPONSE_PRE_GZIP_MIN_SIZE = Integer.parseInt(props.getProperty("response.preGzipMinSize", String.valueOf(RESPONSE_PRE_GZIP_MIN_SIZE)));
+            STATE_MAX_ENTRIES = Integer.parseInt(props.getProperty("state.maxEntries", String.valueOf(STATE_MAX_ENTRIES)));
+            STATE_TTL_SECONDS = Long.parseLong(props.getProperty("state.ttlSeconds", String.valueOf(STATE_TTL_SECONDS)));
+            BENCH_RPS = Double.parseDouble(props.getProperty("bench.rps", String.valueOf(BENCH_RPS)));
+            BENCH_DURATION_SECONDS = Long.parseLong(props.getProperty("bench.durationSeconds", String.valueOf(BENCH_DURATION_SECONDS)));
+            BENCH_WARMUP_SECONDS = Long.parseLong(props.getProperty("bench.warmupSeconds", String.valueOf(BENCH_WARMUP_SECONDS)));
+            BENCH_MAX_IN_FLIGHT = Integer.parseInt(props.getProperty("bench.maxInFlight", String.valueOf(BENCH_MAX_IN_FLIGHT)));
+            // без этих проверок rps=0 даёт бесконечный период и запросы без темпа, а нулевая длительность — пустой отчёт
+            requirePositive("bench.rps", BENCH_RPS);
+            requirePositive("bench.durationSeconds", BENCH_DURATION_SECONDS);
+            requirePositive("bench.maxInFlight", BENCH_MAX_IN_FLIGHT);
+            if (BENCH_WARMUP_SECONDS < 0) {
+                throw new IllegalArgumentException("bench.warmupSeconds must be >= 0, got " + BENCH_WARMUP_SECONDS);
+            }
             System.out.println("✅ Config loaded from " + configFile.getAbsolutePath());
         } catch (IOException e) {
             System.out.println("⚠️ Using default config, file not found: " + configFile.getAbsolutePath());
         }
 
+        if (ACCESS_LOG) {
+            AccessLog.start(ACCESS_LOG_BUFFER, ACCESS_LOG_ON_FULL);
+        }
         loadAllTemplates();
+        if (TEMPLATE_WATCH && Files.isDirectory(templateRoot())) {
+            TemplateWatcher.start(templateRoot());
+        }
         return "SparkApp started at " + Instant.now();
     }
 
-    private static void loadAllTemplates() {
+    private static void requirePositive(String key, double value) {
+        if (!(value > 0)) throw new IllegalArgumentException(key + " must be > 0, got " + value);
+    }
+
+    private static Path templateRoot() {
+        return Paths.get(TEMPLATE_PATH).toAbsolutePath().normalize();
+    }
+
+    private static synchronized void loadAllTemplates() {
+        long started = System.nanoTime();
+        File folder = templateRoot().toFile();
+        if (!folder.exists() || !folder.isDirectory()) {
+            System.out.println("⚠️ Templates folder not found: " + folder.getAbsolutePath());
+            return;
+        }
+
+        List<Path> paths;
+        try (var walk = Files.walk(folder.toPath())) {
+            paths = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("⚠️ Error reading templates: " + e.getMessage());
+            return;
+        }
+
+        // Чтение и разбор файлов параллельно по ядрам; ошибки собираются в сводку
+        Map<Path, Template> files = new ConcurrentHashMap<>();
+        Map<Path, String> errors = new ConcurrentSkipListMap<>();
+        paths.parallelStream().forEach(path -> {
+            try {
+                Template t = parseTemplate(Files.readString(path));
+                if (t != null) {
+                    files.put(path, t);
+                    logger.debug("Loaded template {} {} from {}", t.method.toUpperCase(), t.endpoint, path);
+                } else {
+                    errors.put(path, "no \"METHOD /endpoint\" line");
+                }
+            } catch (Exception e) {
+                errors.put(path, String.valueOf(e.getMessage()));
+            }
+        });
+
+        // Дерево маршрутов и кэш строятся один раз на срез, дальше только чтение
+        snapshot = TemplateSnapshot.build(files, ENDPOINT_CACHE_SIZE);
+
+        long ms = (System.nanoTime() - started) / 1_000_000;
+        System.out.println("✅ Loaded " + files.size() + " of " + paths.size() + " templates in " + ms + " ms");
+        if (!errors.isEmpty()) {
+            System.out.println("❌ " + errors.size() + " templates failed to parse:");
+            int shown = 0;
+            for (Map.Entry<Path, String> e : errors.entrySet()) {
+                if (shown++ == MAX_REPORTED_ERRORS) {
+                    System.out.println("   ... and " + (errors.size() - MAX_REPORTED_ERRORS) + " more");
+                    break;
+                }
+                System.out.println("   " + e.getKey() + ": " + e.getValue());
+            }
+        }
+    }
+
+    private static Template loadTemplateFile(Path path) {
         try {
-            File folder = new File(TEMPLATE_PATH);
-            if (!folder.exists() || !folder.isDirectory()) {
-                System.out.println("⚠️ Templates folder not found: " + folder.getAbsolutePath());
-                return;
+            String content = Files.readString(path);
+            Template t = parseTemplate(content);
+            if (t != null) {
+                logger.debug("Reloaded template {} {} from {}", t.method.toUpperCase(), t.endpoint, path);
             }
+            return t;
+        } catch (Exception e) {
+            logger.warn("Failed to parse template {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
 
-            Files.walk(folder.toPath())
-                    .filter(Files::isRegularFile)
-                    .forEach(path -> {
-                        try {
-                            String content = Files.readString(path);
-                            Template t = parseTemplate(content);
-                            if (t != null) {
-                                String key = t.method.toUpperCase() + " " + t.endpoint;
-                                templateCache.put(key, t);
-                                System.out.println("✅ Loaded template: " + key);
-                            }
-                        } catch (Exception e) {
-                            System.out.println("❌ Failed to parse template " + path + ": " + e.getMessage());
-                        }
-                    });
-        } catch (IOException e) {
-            System.out.println("⚠️ Error reading templates: " + e.getMessage());
+    /** Полная перезагрузка каталога (например, TemplateWatcher потерял события). */
+    static void reloadAll() {
+        loadAllTemplates();
+        logger.info("Templates reloaded: {} files", snapshot.byFile.size());
+    }
+
+    /**
+     * Перечитывает только изменившиеся файлы и атомарно подменяет срез.
+     * Файл, который не удалось разобрать (например, сохранён наполовину), оставляет прежнюю версию шаблона.
+     */
+    static synchronized void reloadFiles(Collection<Path> changed) {
+        Map<Path, Template> files = new HashMap<>(snapshot.byFile);
+        for (Path path : changed) {
+            if (!Files.isRegularFile(path)) {
+                if (files.remove(path) != null) logger.debug("Removed template {}", path);
+                continue;
+            }
+            Template t = loadTemplateFile(path);
+            if (t != null) files.put(path, t);
         }
+        snapshot = TemplateSnapshot.build(files, ENDPOINT_CACHE_SIZE);
+        logger.info("Templates reloaded: {} changed, {} files total", changed.size(), files.size());
+    }
+
+    /** Известные файлы шаблонов внутри пути (нужно при удалении целого каталога). */
+    static List<Path> templateFilesUnder(Path dir) {
+        List<Path> result = new ArrayList<>();
+        for (Path p : snapshot.byFile.keySet()) {
+            if (p.startsWith(dir)) result.add(p);
+        }
+        return result;
     }
 
     private static Template parseTemplate(String content) {
@@ -98,6 +241,7 @@ public class AppLogic {
         if (first.length < 2) return null;
         t.method = first[0].trim();
         t.endpoint = first[1].trim();
+        RouteTrie.validate(t.endpoint);
 
         Map<String, List<String>> sections = new LinkedHashMap<>();
         String currentSection = "default";
@@ -110,6 +254,11 @@ public class AppLogic {
         KNOWN_SECTIONS.put("Error body", false);
         KNOWN_SECTIONS.put("Success body", false);
         KNOWN_SECTIONS.put("Response time", false);
+        KNOWN_SECTIONS.put("Random seed", false);
+        KNOWN_SECTIONS.put("Limits", false);
+        KNOWN_SECTIONS.put("State", false);
+        KNOWN_SECTIONS.put("Body file", false);
+        KNOWN_SECTIONS.put("Faults", false);
 
         for (int i = 1; i < lines.length; i++) {
             String line = lines[i].trim();
@@ -130,6 +279,7 @@ public class AppLogic {
         }
 
         // --- Обработка секций ---
+        List<String> stateLines = null;
         for (Map.Entry<String, List<String>> entry : sections.entrySet()) {
             String section = entry.getKey();
             List<String> body = entry.getValue();
@@ -144,6 +294,17 @@ public class AppLogic {
                             String[] parts = p[1].split(";", 2);
                             h.type = parts[0].trim();
                             h.condition = parts.length > 1 ? parts[1].trim() : "";
+                            // "X-Env: test" или "Content-Type: text/html; charset=utf-8" без типа генератора —
+                            // значение целиком, вместе с тем, что после ";"
+                            if (!VarsGenerator.isType(h.type)) {
+                                h.condition = p[1].trim();
+                                h.type = "fixed";
+                            }
+                            try {
+                                h.compiled = VarsGenerator.compile(h.type, h.condition);
+                            } catch (IllegalArgumentException e) {
+                                throw new IllegalArgumentException("Header '" + h.name + "': " + e.getMessage(), e);
+                            }
                             t.headers.put(h.name, h);
                         }
                     }
@@ -158,6 +319,12 @@ public class AppLogic {
                             String[] parts = p[1].split(";", 2);
                             v.type = parts[0].trim();
                             v.condition = parts.length > 1 ? parts[1].trim() : "";
+                            // Выражение компилируется сразу: ошибка в нём — ошибка загрузки шаблона
+                            try {
+                                v.compiled = VarsGenerator.compile(v.type, v.condition);
+                            } catch (IllegalArgumentException e) {
+                                throw new IllegalArgumentException("Var '" + v.name + "': " + e.getMessage(), e);
+                            }
                             t.bodyVars.put(v.name, v);
                         }
                     }
@@ -182,7 +349,7 @@ public class AppLogic {
 
                 case "Response time":
                     if (body != null && !body.isEmpty()) {
-                        // Берём первую непустую строку секции и парсим её как long
+                        // Берём первую непустую строку секции
                         String candidate = null;
                         for (String s : body) {
                             if (s != null && !s.trim().isEmpty()) {
@@ -191,16 +358,11 @@ public class AppLogic {
                             }
                         }
                         if (candidate != null) {
+                            // Число или распределение (см. LatencyProfile)
                             try {
-                                long val = Long.parseLong(candidate);
-                                if (val >= 0) {
-                                    t.responseTimeMs = val;
-                                } else {
-                                    // отрицательное значение не имеет смысла — игнорируем
-                                    logger.warn("Invalid Response Time (negative) in template '{}': {}", t.endpoint, candidate);
-                                }
-                            } catch (NumberFormatException ex) {
-                                logger.warn("Invalid Response Time value in template '{}': {}", t.endpoint, candidate);
+                                t.responseTime = LatencyProfile.parse(candidate);
+                            } catch (IllegalArgumentException ex) {
+                                logger.warn("Invalid Response Time value in template '{}': {} ({})", t.endpoint, candidate, ex.getMessage());
                             }
                         } else {
                             // секция пуста — оставляем значение по умолчанию (-1)
@@ -211,138 +373,307 @@ public class AppLogic {
                     }
                     break;
 
+                case "Limits":
+                    // Ёмкость бэкенда: RPS (token bucket), Burst, Concurrency, Status, Retry-After
+                    double rps = 0;
+                    int burst = 1, concurrency = 0, limitStatus = -1, retryAfter = -1;
+                    for (String line : body) {
+                        if (line.startsWith("RPS:"))
+                            rps = Double.parseDouble(line.replace("RPS:", "").trim());
+                        else if (line.startsWith("Burst:"))
+                            burst = Integer.parseInt(line.replace("Burst:", "").trim());
+                        else if (line.startsWith("Concurrency:"))
+                            concurrency = Integer.parseInt(line.replace("Concurrency:", "").trim());
+                        else if (line.startsWith("Status:"))
+                            limitStatus = Integer.parseInt(line.replace("Status:", "").trim());
+                        else if (line.startsWith("Retry-After:"))
+                            retryAfter = Integer.parseInt(line.replace("Retry-After:", "").trim());
+                    }
+                    if (rps > 0 || concurrency > 0) {
+                        t.limiter = new EndpointLimiter(rps, burst, concurrency, limitStatus, retryAfter);
+                    }
+                    break;
+
+                case "State":
+                    // Разбирается после Vars и тел: значениям put нужны имена переменных
+                    stateLines = body;
+                    break;
+
+                case "Body file":
+                    // Успешный ответ — файл из bodies.path, отображённый в память (см. FileBody)
+                    String filePath = null, contentType = null;
+                    boolean chunked = false;
+                    long chunkSize = 65536, bandwidth = 0;
+                    for (String line : body) {
+                        if (line.startsWith("Path:"))
+                            filePath = line.replace("Path:", "").trim();
+                        else if (line.startsWith("Content-Type:"))
+                            contentType = line.replace("Content-Type:", "").trim();
+                        else if (line.startsWith("Chunked:"))
+                            chunked = Boolean.parseBoolean(line.replace("Chunked:", "").trim());
+                        else if (line.startsWith("Chunk size:"))
+                            chunkSize = FileBody.parseSize(line.replace("Chunk size:", ""));
+                        else if (line.startsWith("Bandwidth:"))
+                            bandwidth = FileBody.parseSize(line.replace("Bandwidth:", ""));
+                    }
+                    if (filePath == null || filePath.isEmpty()) throw new IllegalArgumentException("Body file: Path is missing");
+                    try {
+                        t.bodyFile = FileBody.open(Paths.get(BODIES_PATH).resolve(filePath), contentType, chunked,
+                                (int) Math.min(Math.max(chunkSize, 1024), Integer.MAX_VALUE), bandwidth);
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("Body file: cannot map " + filePath + ": " + e, e);
+                    }
+                    break;
+
+                case "Faults":
+                    // Обрывы, недописанные тела, зависания и капельная отдача (см. FaultInjector)
+                    t.faults = FaultInjector.parse(body);
+                    break;
+
+                case "Random seed":
+                    // Фиксированный seed делает ошибки и random-переменные воспроизводимыми от прогона к прогону
+                    for (String s : body) {
+                        if (!s.trim().isEmpty()) {
+                            t.randomSeed = Long.parseLong(s.trim());
+                            break;
+                        }
+                    }
+                    break;
+
                 default:
                     // Игнорируем неизвестные секции
                     break;
             }
         }
 
+        // Тела разбираются один раз: на запрос остаётся только подставить значения
+        Set<String> varNames = new HashSet<>(t.bodyVars.keySet());
+        varNames.add("body");
+        t.successCompiled = CompiledBody.compile(t.successBody, varNames);
+        t.errorCompiled = CompiledBody.compile(t.errorBody, varNames);
+        // Заголовки генерируются теми же генераторами, что и Vars, и разбирают тело вместе с ними
+        List<VarDef> generators = new ArrayList<>(t.bodyVars.values());
+        generators.addAll(t.headers.values());
+        t.streaming = StreamingExtractor.forVars(generators);
+        t.metrics = Metrics.forTemplate(t);
+        compileHeaders(t);
+        // Что шаблону нужно от запроса: остальное из него не читается вовсе
+        t.inputs = RequestInput.partsFor(generators);
+        for (VarDef v : generators) {
+            if ("stateGet".equals(v.type) && StateStore.Key.parse(v.condition).uses("body")) t.bodyText = true;
+            if ("regexParse".equals(v.type)) t.bodyText = true;
+        }
+        if (stateLines != null && !stateLines.isEmpty()) t.state = StateStore.compile(stateLines, varNames);
+        if (t.successCompiled.uses("body") || t.errorCompiled.uses("body")
+                || (t.state != null && StateStore.uses(t.state, "body"))) t.bodyText = true;
+        // Без этого большие тела jsonParse/xmlParse читаются потоком прямо из запроса, не собираясь в String
+        if (t.streaming != null && !t.streaming.singlePass()) t.bodyText = true;
+        if (t.bodyText) t.inputs.add(RequestInput.Part.BODY);
+
+        // Ни переменных, ни подстановок, ни состояния, ни генерируемых заголовков — ответ можно закодировать один раз
+        if (t.bodyVars.isEmpty() && t.state == null && t.generatedHeaders.length == 0
+                && t.successCompiled.isStatic() && t.errorCompiled.isStatic()) {
+            t.staticSuccess = PreEncodedBody.of(t.successCompiled.render(Map.of()));
+            t.staticError = PreEncodedBody.of(t.errorCompiled.render(Map.of()));
+        }
+
         return t;
     }
 
-    public static Template getTemplate(String method, String endpoint) {
-        String key = method + " " + endpoint;
-
-        // 1. Проверяем быстрый кэш соответствий
-        Template cached = endpointCache.get(key);
-        if (cached != null) return cached;
-
-        // 2. Пробуем точное совпадение
-        Template exact = templateCache.get(key);
-        if (exact != null) {
-            endpointCache.put(key, exact);
-            return exact;
+    // fixed-заголовки кодируются в байты один раз (PreEncodedHttpField), Content-Type идёт через res.type(),
+    // остальные генерируются на запрос. Длину и кодирование тела считает Jetty — их из шаблона не берём
+    private static void compileHeaders(Template t) {
+        List<HttpField> preEncoded = new ArrayList<>();
+        List<HeaderDef> generated = new ArrayList<>();
+        for (HeaderDef h : t.headers.values()) {
+            if (h.name.equalsIgnoreCase("Content-Length") || h.name.equalsIgnoreCase("Transfer-Encoding")) {
+                logger.warn("Header {} in template {} {} is ignored: it is set by the server", h.name, t.method, t.endpoint);
+            } else if (!"fixed".equals(h.type)) {
+                generated.add(h);
+            } else if (h.name.equalsIgnoreCase("Content-Type")) {
+                t.contentType = h.condition;
+            } else {
+                preEncoded.add(new PreEncodedHttpField(h.name, h.condition));
+            }
         }
+        t.preEncodedHeaders = preEncoded.toArray(new HttpField[0]);
+        t.generatedHeaders = generated.toArray(new HeaderDef[0]);
+    }
 
-        // 3. Ищем подходящий шаблон по паттернам
-        Template matched = findMatchingTemplate(method, endpoint);
-        if (matched != null) {
-            endpointCache.put(key, matched);
-        }
-        return matched;
+    /** Все шаблоны текущего среза. */
+    public static Collection<Template> templates() {
+        return snapshot.byKey.values();
     }
 
-    private static Template findMatchingTemplate(String method, String requestUri) {
-        for (Map.Entry<String, Template> entry : templateCache.entrySet()) {
-            String key = entry.getKey();
-            String[] parts = key.split(" ", 2);
-            if (parts.length != 2) continue;
-            String m = parts[0];
-            String pattern = parts[1];
+    public static Template getTemplate(String method, String endpoint) {
+        RouteMatch m = match(method, endpoint);
+        return m != null ? m.template : null;
+    }
 
-            if (!m.equalsIgnoreCase(method)) continue;
+    public static RouteMatch match(String method, String endpoint) {
+        String key = method + " " + normalizePath(endpoint);
+        TemplateSnapshot s = snapshot;   // весь поиск идёт по одному срезу
 
-            // Преобразуем шаблон в regex: :var → ([^/]+), * → .*
-            String regex = Pattern.quote(pattern)
-                    .replace("\\*", ".*")
-                    .replaceAll(":(\\w+)", "([^/]+)")
-                    .replace("\\?", "\\?");
+        // 1. Проверяем быстрый кэш соответствий (в т.ч. закэшированные промахи)
+        RouteMatch cached = s.endpointCache.get(key);
+        if (cached != null) return cached == NOT_FOUND ? null : cached;
 
-            Pattern compiled = Pattern.compile("^" + regex + "$");
-            Matcher matcher = compiled.matcher(requestUri);
+        // 2. Ищем шаблон в дереве маршрутов (точное совпадение, :var, *)
+        RouteMatch matched = s.routes.match(method, endpoint);
+        s.endpointCache.put(key, matched != null ? matched : NOT_FOUND);
+        return matched;
+    }
 
-            if (matcher.matches()) {
-                return entry.getValue();
-            }
-        }
-        return null;
+    /** Кэш соответствий текущего среза; счётчики обнуляются при перезагрузке шаблонов. */
+    public static EndpointCache<RouteMatch> endpointCache() {
+        return snapshot.endpointCache;
     }
 
-    private static String processTemplate(String template, Map<String,String> vars) {
-        return new StringSubstitutor(vars, "$", "$").replace(template);
+    // Приводит путь к виду, в котором его видит RouteTrie: без повторных и завершающего "/"
+    static String normalizePath(String path) {
+        if (path == null || path.isEmpty()) return "/";
+        if (path.indexOf("//") < 0 && (path.length() == 1 || path.charAt(path.length() - 1) != '/')) {
+            return path;
+        }
+        StringBuilder sb = new StringBuilder(path.length());
+        for (String seg : RouteTrie.splitPath(path)) sb.append('/').append(seg);
+        return sb.length() == 0 ? "/" : sb.toString();
     }
 
     public static ResponseData buildResponse(
             String method,
             String endpoint,
-            Map<String,String> reqVars,
-            Map<String,String> reqHeaders,
-            Map<String,String> reqParams,
-            Map<String,String> reqPathVars) {
-        long start = System.currentTimeMillis();
-
-        Template t = getTemplate(method, endpoint);
-        if (t == null)
+            RequestInput input) {
+        long start = System.nanoTime();
+
+        RouteMatch m = match(method, endpoint);
+        if (m == null) {
+            Metrics.notFound();
             return new ResponseData(404, "{\"error\":\"template not found\"}", Map.of());
+        }
+        Template t = m.template;
 
-        Map<String,String> finalVars = new HashMap<>(reqVars);
+        // Секция Limits: при превышении RPS или числа одновременных запросов — сразу отказ
+        if (t.limiter != null) {
+            ResponseData rejected = t.limiter.tryAcquire(t.metrics);
+            if (rejected != null) return rejected;
+        }
+        if (t.limiter == null || !t.limiter.capsConcurrency()) return respond(m, t, input, start, method, endpoint);
 
-        // Генерация переменных из шаблона
-        for (VarDef v : t.bodyVars.values()) {
-            String val = VarsGenerator.generate(
-                    v.type,
-                    reqVars.getOrDefault("body", ""),
-                    v.condition,
-                    reqHeaders,
-                    reqParams,
-                    reqPathVars
-            );
-            finalVars.put(v.name, val);
+        // Слот занят: до передачи в rd.limiter (его освободит отправка ответа) он на нашей совести —
+        // исключение в генерации, рендере или State не должно оставить его занятым навсегда
+        ResponseData rd = null;
+        try {
+            rd = respond(m, t, input, start, method, endpoint);
+            return rd;
+        } finally {
+            if (rd == null || rd.limiter == null) t.limiter.release();
         }
+    }
 
-        // Определяем, будет ли ошибка
-        boolean isError = new Random().nextInt(100) < t.errorPercent;
-        String bodyTemplate = isError ? t.errorBody : t.successBody;
-        int status = isError ? t.errorStatus : 200;
+    private static ResponseData respond(RouteMatch m, Template t, RequestInput input,
+                                        long start, String method, String endpoint) {
+        long matched = System.nanoTime();
+
+        // Статический шаблон: тело и заголовки закодированы при загрузке, копировать и рендерить нечего
+        if (t.staticSuccess != null) {
+            RandomGenerator random = RequestContext.randomFor(t);
+            boolean isError = random.nextInt(100) < t.errorPercent;
+            t.metrics.request(isError);
+            long responseTimeMs = t.responseTime != null ? t.responseTime.sampleMs(random) : -1;
+            t.metrics.record(Metrics.Phase.match, matched - start);
+
+            PreEncodedBody pre = isError ? t.staticError : t.staticSuccess;
+            ResponseData rd = new ResponseData(isError ? t.errorStatus : 200, pre.identity, Map.of());
+            withHeaders(rd, t, null);
+            rd.gzipBody = pre.gzip;
+            if (!isError) rd.file = t.bodyFile;
+            rd.fault = pickFault(t, random);
+            return finish(rd, t, responseTimeMs, start, method, endpoint);
+        }
 
-        // Подставляем переменные в шаблон
-        String body = processTemplate(bodyTemplate, finalVars);
+        RequestContext ctx = new RequestContext(input, m.pathVars, t);
+        Map<String,String> finalVars = new HashMap<>(t.bodyVars.size() * 2 + 2);
+        if (t.bodyText) finalVars.put("body", ctx.body());
+        ctx.vars = finalVars;   // stateGet видит переменные, объявленные выше него
 
-        // Генерация заголовков ответа
-        Map<String,String> headers = new HashMap<>();
-        t.headers.forEach((k,h) -> headers.put(k, "auto"));
-        long elapsed = System.currentTimeMillis() - start;
-        long delay = t.responseTimeMs - elapsed;
+        // Определяем, будет ли ошибка (до генерации переменных, чтобы при seed решение не зависело от их числа)
+        boolean isError = ctx.random().nextInt(100) < t.errorPercent;
+        t.metrics.request(isError);
+        long responseTimeMs = t.responseTime != null ? t.responseTime.sampleMs(ctx.random()) : -1;
 
-        if (delay > 0) {
-            try {
-                Thread.sleep(delay);
-            } catch (InterruptedException ignored) {}
-        } else if (t.responseTimeMs > 0) {
-            logger.warn("Response time exceeded: expected {}ms, actual {}ms for {} {}",
-                    t.responseTimeMs, elapsed, method, endpoint);
+        // Генерация переменных из шаблона (тело разбирается один раз на все переменные)
+        for (VarDef v : t.bodyVars.values()) {
+            String val = VarsGenerator.generate(v, ctx);
+            finalVars.put(v.name, val);
         }
+        // Генерируемые заголовки ответа — тем же контекстом (тело уже разобрано)
+        String[] headerValues = null;
+        if (t.generatedHeaders.length > 0) {
+            headerValues = new String[t.generatedHeaders.length];
+            for (int i = 0; i < headerValues.length; i++) {
+                headerValues[i] = VarsGenerator.generate(t.generatedHeaders[i], ctx);
+            }
+        }
+        long generated = System.nanoTime();
+
+        // Секция State: require проверяется всегда, put/delete — только для успешного ответа
+        if (t.state != null) {
+            int missingStatus = StateStore.apply(t.state, finalVars, isError);
+            if (missingStatus > 0) {
+                ResponseData rd = new ResponseData(missingStatus, "{\"error\":\"not found\"}", Map.of());
+                return finish(rd, t, responseTimeMs, start, method, endpoint);
+            }
+        }
+
+        CompiledBody bodyTemplate = isError ? t.errorCompiled : t.successCompiled;
+        int status = isError ? t.errorStatus : 200;
 
-        return new ResponseData(status, body, headers);
+        // Подставляем переменные в заранее разобранный шаблон
+        byte[] body = bodyTemplate.render(finalVars);
+        long rendered = System.nanoTime();
+        t.metrics.record(Metrics.Phase.match, matched - start);
+        t.metrics.record(Metrics.Phase.generate, generated - matched);
+        t.metrics.record(Metrics.Phase.render, rendered - generated);
+
+        ResponseData rd = new ResponseData(status, body, Map.of());
+        withHeaders(rd, t, headerValues);
+        if (!isError) rd.file = t.bodyFile;
+        rd.fault = pickFault(t, ctx.random());
+        return finish(rd, t, responseTimeMs, start, method, endpoint);
     }
 
-    public static Map<String, String> extractPathVars(String method, String requestUri) {
-        Map<String, String> vars = new HashMap<>();
+    private static void withHeaders(ResponseData rd, Template t, String[] generatedValues) {
+        rd.contentType = t.contentType;
+        rd.preEncodedHeaders = t.preEncodedHeaders;
+        rd.generatedHeaders = t.generatedHeaders;
+        rd.generatedValues = generatedValues;
+    }
 
-        // ищем шаблон, соответствующий методу и endpoint'у
-        Template t = findMatchingTemplate(method, requestUri);
-        if (t == null) return vars;
+    private static FaultInjector.Fault pickFault(Template t, RandomGenerator random) {
+        if (t.faults == null) return null;
+        FaultInjector.Fault fault = t.faults.pick(random);
+        if (fault != null) t.metrics.faulted(fault.type);
+        return fault;
+    }
 
-        String[] templateParts = t.endpoint.split("/");
-        String[] requestParts = requestUri.split("/");
+    // Общий хвост для статических и обычных шаблонов: слот Limits и оставшаяся задержка
+    private static ResponseData finish(ResponseData rd, Template t, long responseTimeMs,
+                                       long start, String method, String endpoint) {
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        long delay = responseTimeMs - elapsed;
 
-        for (int i = 0; i < Math.min(templateParts.length, requestParts.length); i++) {
-            String tp = templateParts[i];
-            if (tp.startsWith(":")) {
-                vars.put(tp.substring(1), requestParts[i]);
-            }
+        rd.metrics = t.metrics;
+        if (t.limiter != null && t.limiter.capsConcurrency()) rd.limiter = t.limiter;
+        if (delay > 0) {
+            // Не спим на потоке Jetty: ответ будет отложен DelayedResponseHandler'ом
+            rd.delayMs = delay;
+        } else if (responseTimeMs >= 0 && elapsed > responseTimeMs) {
+            logger.warn("Response time exceeded: expected {}ms, actual {}ms for {} {}",
+                    responseTimeMs, elapsed, method, endpoint);
         }
-        return vars;
+
+        return rd;
     }
 }
 
@@ -0,0 +1,164 @@
+package org.UniMock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Тело ответа, разобранное при загрузке шаблона: чередование литералов и слотов $var$.
+ * Литералы сразу хранятся в UTF-8, поэтому на запрос остаётся только склеить байты
+ * и закодировать значения переменных.
+ *
+ * Правила разбора повторяют StringSubstitutor("$", "$"): $name$ с неизвестным именем
+ * остаётся в теле как есть. Отличие одно — значения переменных повторно не подставляются
+ * (раньше $x$ внутри тела запроса тоже раскрывался).
+ */
+public class CompiledBody {
+
+    private static final CompiledBody EMPTY = new CompiledBody(new String[]{""}, new String[0]);
+
+    // Буферы растут до самого большого ответа и переиспользуются; пул, а не ThreadLocal —
+    // на виртуальных потоках ThreadLocal выделял бы новый буфер на каждый запрос
+    private static final ObjectPool<ByteSink> SINKS = new ObjectPool<>(() -> new ByteSink(1024));
+
+    private final byte[][] literals;   // literals.length == slots.length + 1
+    private final String[] text;       // те же литералы строками — для renderText
+    private final String[] slots;
+    private final int literalLength;
+
+    private CompiledBody(String[] text, String[] slots) {
+        this.text = text;
+        this.literals = new byte[text.length][];
+        for (int i = 0; i < text.length; i++) literals[i] = text[i].getBytes(StandardCharsets.UTF_8);
+        this.slots = slots;
+        int n = 0;
+        for (byte[] l : literals) n += l.length;
+        this.literalLength = n;
+    }
+
+    /**
+     * @param text     исходное тело из шаблона (null — пустое тело)
+     * @param varNames имена переменных, которые будут известны на момент запроса
+     */
+    public static CompiledBody compile(String text, Set<String> varNames) {
+        if (text == null || text.isEmpty()) return EMPTY;
+
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            int open = text.indexOf('$', i);
+            if (open < 0) {
+                literal.append(text, i, text.length());
+                break;
+            }
+            int close = text.indexOf('$', open + 1);
+            if (close < 0) {
+                literal.append(text, i, text.length());
+                break;
+            }
+            String name = text.substring(open + 1, close);
+            literal.append(text, i, open);
+            if (varNames.contains(name)) {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                slots.add(name);
+            } else {
+                literal.append(text, open, close + 1);
+            }
+            i = close + 1;
+        }
+        literals.add(literal.toString());
+        return new CompiledBody(literals.toArray(new String[0]), slots.toArray(new String[0]));
+    }
+
+    /** Тело без переменных — результат одинаков для любого запроса. */
+    public boolean isStatic() {
+        return slots.length == 0;
+    }
+
+    /** Есть ли в теле слот $name$. */
+    public boolean uses(String name) {
+        for (String slot : slots) {
+            if (slot.equals(name)) return true;
+        }
+        return false;
+    }
+
+    /** Рендерит тело в UTF-8. Копируется только готовый результат, промежуточный буфер берётся из пула. */
+    public byte[] render(Map<String, String> vars) {
+        if (slots.length == 0) return literals[0].clone();
+
+        ByteSink sink = SINKS.acquire();
+        try {
+            sink.reset(literalLength + slots.length * 16);
+            for (int i = 0; i < slots.length; i++) {
+                sink.write(literals[i]);
+                String v = vars.get(slots[i]);
+                if (v != null) sink.writeUtf8(v);
+            }
+            sink.write(literals[slots.length]);
+            return sink.toByteArray();
+        } finally {
+            SINKS.release(sink);
+        }
+    }
+
+    /** То же строкой — для значений, которые дальше живут как String (секция State), без UTF-8 туда и обратно. */
+    public String renderText(Map<String, String> vars) {
+        if (slots.length == 0) return text[0];
+        StringBuilder sb = new StringBuilder(literalLength + slots.length * 16);
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(text[i]);
+            String v = vars.get(slots[i]);
+            if (v != null) sb.append(v);
+        }
+        return sb.append(text[slots.length]).toString();
+    }
+
+    private static final class ByteSink {
+        private byte[] buf;
+        private int size;
+
+        ByteSink(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void reset(int expected) {
+            size = 0;
+            ensure(expected);
+        }
+
+        void write(byte[] b) {
+            ensure(size + b.length);
+            System.arraycopy(b, 0, buf, size, b.length);
+            size += b.length;
+        }
+
+        void writeUtf8(String s) {
+            int len = s.length();
+            ensure(size + len);
+            // Быстрый путь для ASCII — без промежуточного byte[]
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    write(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                buf[size++] = (byte) c;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void ensure(int capacity) {
+            if (capacity > buf.length) buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.UniMock;
+
+/**
+ * Генератор переменной, подготовленный при загрузке шаблона:
+ * выражение (XPath, JSON-путь, regex, диапазон) уже разобрано, на запросе только исполняется.
+ */
+@FunctionalInterface
+public interface CompiledVar {
+    String generate(RequestContext ctx) throws Exception;
+}
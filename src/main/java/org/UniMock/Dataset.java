@@ -0,0 +1,176 @@
+package org.UniMock;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CSV-набор данных для переменных типа csv — случайная строка из большого справочника:
+ *
+ *   Vars:
+ *   city: csv; cities.csv; name        (файл относительно datasets.path, колонка по заголовку)
+ *
+ * Первая строка файла — заголовок. Поддерживаются кавычки "..." и "" внутри них.
+ * Пробелы по краям полей без кавычек отбрасываются — и в заголовке, и в данных; "  так  " сохраняет их.
+ * Каждая колонка хранится одной строкой-склейкой и массивом смещений, а не миллионом String:
+ * на значение уходит 4 байта смещения плюс его символы. String создаётся только для выбранного значения.
+ *
+ * Наборы кэшируются по пути: несколько шаблонов с одним файлом делят одну копию в памяти,
+ * изменённый файл перечитывается при следующей загрузке шаблона.
+ */
+public final class Dataset {
+
+    private static final Map<Path, Dataset> CACHE = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final long modified;
+    private final String[] header;
+    private final String[] columns;    // колонка i — все значения подряд
+    private final int[][] offsets;     // offsets[i][row] — начало значения, offsets[i][rows] — конец колонки
+    private final int rows;
+
+    private Dataset(Path path, long modified, String[] header, String[] columns, int[][] offsets, int rows) {
+        this.path = path;
+        this.modified = modified;
+        this.header = header;
+        this.columns = columns;
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+
+    /** csv("cities.csv; name") — фабрика для VarsGenerator. */
+    static CompiledVar column(String condition) {
+        String[] p = condition == null ? new String[0] : condition.split(";", 2);
+        if (p.length < 2 || p[0].isBlank() || p[1].isBlank()) {
+            throw new IllegalArgumentException("csv: expected 'file.csv; column', got '" + condition + "'");
+        }
+        Dataset ds;
+        try {
+            ds = load(Paths.get(AppLogic.DATASETS_PATH).resolve(p[0].trim()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("csv: cannot read " + p[0].trim() + ": " + e.getMessage(), e);
+        }
+        int col = ds.columnIndex(p[1].trim());
+        if (ds.rows == 0) throw new IllegalArgumentException("csv: " + ds.path + " has no data rows");
+        return ctx -> ds.value(col, ctx.random().nextInt(ds.rows));
+    }
+
+    /** Набор из кэша; перечитывается, если файл изменился. */
+    public static Dataset load(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        long modified = Files.getLastModifiedTime(key).toMillis();
+        Dataset cached = CACHE.get(key);
+        if (cached != null && cached.modified == modified) return cached;
+        Dataset ds = read(key, modified);
+        CACHE.put(key, ds);
+        System.out.println("📚 Dataset " + key.getFileName() + ": " + ds.rows + " rows, " + ds.header.length + " columns");
+        return ds;
+    }
+
+    private static Dataset read(Path path, long modified) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String first = reader.readLine();
+            if (first == null) throw new IOException("empty file");
+            if (!first.isEmpty() && first.charAt(0) == '\uFEFF') first = first.substring(1);   // BOM
+            List<String> fields = new ArrayList<>();
+            split(first, fields);
+            String[] header = fields.toArray(new String[0]);
+
+            int n = header.length;
+            StringBuilder[] data = new StringBuilder[n];
+            int[][] offsets = new int[n][];
+            for (int i = 0; i < n; i++) {
+                data[i] = new StringBuilder();
+                offsets[i] = new int[1024];
+            }
+            int rows = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                split(line, fields);
+                if (rows + 1 >= offsets[0].length) {
+                    for (int i = 0; i < n; i++) offsets[i] = Arrays.copyOf(offsets[i], offsets[i].length * 2);
+                }
+                for (int i = 0; i < n; i++) {
+                    offsets[i][rows] = data[i].length();
+                    if (i < fields.size()) data[i].append(fields.get(i));   // недостающие поля — пустые
+                }
+                rows++;
+            }
+            String[] columns = new String[n];
+            for (int i = 0; i < n; i++) {
+                offsets[i][rows] = data[i].length();
+                offsets[i] = Arrays.copyOf(offsets[i], rows + 1);
+                columns[i] = data[i].toString();
+                data[i] = null;
+            }
+            return new Dataset(path, modified, header, columns, offsets, rows);
+        }
+    }
+
+    // Одна строка CSV в fields: разделитель запятая, поля в кавычках могут содержать запятые и "".
+    // Пробелы вокруг поля отбрасываются, внутри кавычек — сохраняются
+    private static void split(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int quotedEnd = -1;   // длина field сразу после закрывающей кавычки, -1 — поле без кавычек
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                        quotedEnd = field.length();
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                if (quotedEnd < 0 && field.toString().isBlank()) field.setLength(0);   // пробелы до кавычки
+            } else if (c == ',') {
+                fields.add(finish(field, quotedEnd));
+                field.setLength(0);
+                quotedEnd = -1;
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(finish(field, quotedEnd));
+    }
+
+    private static String finish(StringBuilder field, int quotedEnd) {
+        if (quotedEnd < 0) return field.toString().trim();
+        int end = field.length();
+        while (end > quotedEnd && Character.isWhitespace(field.charAt(end - 1))) end--;   // пробелы после кавычки
+        return field.substring(0, end);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columnIndex(String name) {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].equals(name)) return i;
+        }
+        throw new IllegalArgumentException("csv: no column '" + name + "' in " + path.getFileName()
+                + ", available: " + String.join(", ", header));
+    }
+
+    public String value(int column, int row) {
+        return columns[column].substring(offsets[column][row], offsets[column][row + 1]);
+    }
+}
@@ -0,0 +1,196 @@
+package org.UniMock;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отложенная отдача ответа без Thread.sleep на потоке Jetty.
+ *
+ * Обработчик маршрута кладёт в атрибут запроса DEADLINE_ATTR момент (System.nanoTime),
+ * не раньше которого ответ должен уйти клиенту. Тело, которое пишет Spark, в этом случае
+ * копится в буфере, запрос переводится в async-режим, а поток возвращается в пул.
+ * По таймеру буфер отправляется клиенту на потоке пула Jetty и запрос завершается.
+ */
+public class DelayedResponseHandler extends HandlerWrapper {
+
+    public static final String DEADLINE_ATTR = "unimock.deadlineNanos";
+    public static final String METRICS_ATTR = "unimock.metrics";
+    /** Тело ответа уже в gzip (PreEncodedBody): Spark не должен сжимать его ещё раз. */
+    public static final String GZIP_ATTR = "unimock.gzip";
+    /** Тело — файл (FileBody): Spark пишет пустое тело в буфер, а файл отдаётся отсюда. */
+    public static final String FILE_ATTR = "unimock.file";
+    /** Сбой соединения (FaultInjector.Fault): тело копится в буфере и отыгрывается сбоем. */
+    public static final String FAULT_ATTR = "unimock.fault";
+
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(DelayedResponseHandler.class);
+
+    // Один поток таймера: он только перекидывает задачу в пул Jetty и никогда не пишет в сокет сам
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "response-delay-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest,
+                       HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+        DeferredResponse deferred = new DeferredResponse(request, response);
+        EndpointLimiter limiter = null;
+        boolean handedOff = false;   // слот освободит done после асинхронной отправки
+        try {
+            super.handle(target, baseRequest, request, deferred);
+            limiter = EndpointLimiter.takeFrom(request);
+            if (deferred.isBuffered()) handedOff = sendDeferred(request, response, deferred, limiter);
+        } finally {
+            // ответ записан или обработка упала на любом шаге — слот Limits освобождается ровно один раз
+            if (!handedOff) {
+                EndpointLimiter.releaseFor(request);   // super.handle бросил раньше takeFrom
+                if (limiter != null) limiter.release();
+            }
+        }
+    }
+
+    /**
+     * Отправляет перехваченное тело: сразу или после задержки/сбоя/медленной отдачи.
+     * true — отправка ушла в async-режим, и слот limiter освободит её завершение.
+     */
+    private static boolean sendDeferred(HttpServletRequest request, HttpServletResponse response,
+                                        DeferredResponse deferred, EndpointLimiter limiter) throws IOException {
+        FileBody file = (FileBody) request.getAttribute(FILE_ATTR);
+        FaultInjector.Fault fault = (FaultInjector.Fault) request.getAttribute(FAULT_ATTR);
+        Long deadline = (Long) request.getAttribute(DEADLINE_ATTR);
+        long wait = deadline != null ? deadline - System.nanoTime() : 0;
+        if (wait <= 0 && file == null && fault == null) {
+            deferred.writeTo(response);
+            return false;
+        }
+
+        AsyncContext ctx = request.startAsync();
+        ctx.setTimeout(0);
+        Runnable done = () -> {
+            try {
+                ctx.complete();
+            } catch (IllegalStateException e) {
+                // соединение уже оборвано (сбой reset/partial/stall)
+            }
+            if (limiter != null) limiter.release();
+        };
+        Runnable send = () -> {
+            if (fault != null) {
+                FaultInjector.execute(fault, request, response, deferred.bufferedBody(), ctx, done);
+                return;
+            }
+            if (file != null) {
+                file.stream(response, ctx, done);   // done — после последнего байта
+                return;
+            }
+            try {
+                deferred.writeTo(response);
+            } catch (IOException e) {
+                logger.debug("Delayed response write failed: {}", e.getMessage());
+            } finally {
+                done.run();
+            }
+        };
+        if (wait <= 0) {
+            ctx.start(send);
+            return true;
+        }
+
+        Metrics.TemplateMetrics metrics = (Metrics.TemplateMetrics) request.getAttribute(METRICS_ATTR);
+        long scheduled = System.nanoTime();
+        timer.schedule(() -> ctx.start(() -> {
+            if (metrics != null) metrics.record(Metrics.Phase.delay, System.nanoTime() - scheduled);
+            send.run();
+        }), wait, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    /** Запуск задачи по таймеру задержек; сама задача должна уйти в пул (ctx.start), а не писать здесь. */
+    static void schedule(Runnable task, long delayNanos) {
+        timer.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Перехватывает тело ответа, если для запроса задан дедлайн, тело-файл или сбой. Статус и заголовки идут напрямую.
+     * Оборачивает ответ всегда, в том числе на виртуальных потоках (VirtualThreadHandler).
+     */
+    static class DeferredResponse extends HttpServletResponseWrapper {
+        private final HttpServletRequest request;
+        private BufferStream buffer;
+
+        DeferredResponse(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (buffer != null) return buffer;
+            if (request.getAttribute(DEADLINE_ATTR) == null && request.getAttribute(FILE_ATTR) == null
+                    && request.getAttribute(FAULT_ATTR) == null) {
+                return super.getOutputStream();
+            }
+            buffer = new BufferStream();
+            return buffer;
+        }
+
+        // Spark (GzipUtils) сжимает тело сам, если видит Content-Encoding: gzip в ответе.
+        // Для уже сжатого тела прячем от него этот заголовок — клиенту он уходит как обычно
+        @Override
+        public Collection<String> getHeaders(String name) {
+            if (request.getAttribute(GZIP_ATTR) != null && "Content-Encoding".equalsIgnoreCase(name)) {
+                return Collections.emptyList();
+            }
+            return super.getHeaders(name);
+        }
+
+        boolean isBuffered() {
+            return buffer != null;
+        }
+
+        byte[] bufferedBody() {
+            return buffer.bytes.toByteArray();
+        }
+
+        void writeTo(HttpServletResponse response) throws IOException {
+            FileBody file = (FileBody) request.getAttribute(FILE_ATTR);
+            if (file != null) {
+                file.writeTo(response);   // то, что Spark записал в буфер, — пустая строка
+                return;
+            }
+            response.setContentLength(buffer.bytes.size());
+            buffer.bytes.writeTo(response.getOutputStream());
+        }
+    }
+
+    private static class BufferStream extends ServletOutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+        @Override public void write(int b) { bytes.write(b); }
+        @Override public void write(byte[] b, int off, int len) { bytes.write(b, off, len); }
+        @Override public boolean isReady() { return true; }
+        @Override public void setWriteListener(WriteListener writeListener) { }
+        // flush/close от Spark игнорируются — реальная отправка происходит по таймеру
+    }
+}
@@ -0,0 +1,182 @@
+package org.UniMock;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный по размеру кэш "METHOD путь → результат маршрутизации".
+ *
+ * Сегментированный LRU (SLRU): новая запись попадает в probation-сегмент,
+ * при повторном обращении переезжает в protected. Одноразовые ключи
+ * (например, /users/:id с миллионом разных id) вытесняются из probation
+ * и не выталкивают "горячие" маршруты. Для конкурентности кэш разбит
+ * на независимые шарды со своей блокировкой.
+ *
+ * Попадание в protected идёт без блокировки: поиск по ConcurrentHashMap и отметка
+ * "было обращение". Порядок вытеснения из protected — CLOCK (второй шанс) по этой отметке,
+ * а не точный LRU, зато горячие маршруты не выстраиваются в очередь за монитором шарда.
+ * Блокировка берётся только на промах, повторное обращение из probation и вставку.
+ */
+public class EndpointCache<V> {
+
+    private static final int SHARDS = 16;                 // степень двойки
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final Shard<V>[] shards;
+    private final int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public EndpointCache(int maxSize) {
+        this.maxSize = Math.max(maxSize, SHARDS);
+        int perShard = this.maxSize / SHARDS;
+        int protectedCap = Math.max(1, perShard * PROTECTED_PERCENT / 100);
+        int probationCap = Math.max(1, perShard - protectedCap);
+        shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) shards[i] = new Shard<>(probationCap, protectedCap, evictions);
+    }
+
+    public V get(String key) {
+        V v = shard(key).get(key);
+        if (v != null) hits.increment(); else misses.increment();
+        return v;
+    }
+
+    public void put(String key, V value) {
+        shard(key).put(key, value);
+    }
+
+    public void clear() {
+        for (Shard<V> s : shards) s.clear();
+    }
+
+    public int size() {
+        int n = 0;
+        for (Shard<V> s : shards) n += s.size();
+        return n;
+    }
+
+    public int maxSize() { return maxSize; }
+    public long hitCount() { return hits.sum(); }
+    public long missCount() { return misses.sum(); }
+    public long evictionCount() { return evictions.sum(); }
+
+    @Override
+    public String toString() {
+        return "EndpointCache{size=" + size() + "/" + maxSize
+                + ", hits=" + hitCount() + ", misses=" + missCount()
+                + ", evictions=" + evictionCount() + "}";
+    }
+
+    private Shard<V> shard(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return shards[h & (SHARDS - 1)];
+    }
+
+    private static final class Entry<V> {
+        final String key;
+        volatile V value;
+        volatile boolean isProtected;
+        volatile boolean referenced;    // было обращение с последнего обхода protected
+
+        Entry(String key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Shard<V> {
+        private final int probationCap;
+        private final int protectedCap;
+        private final LongAdder evictions;
+        // Индекс для чтения без блокировки; сегменты ниже меняются только под монитором шарда
+        private final ConcurrentHashMap<String, Entry<V>> index = new ConcurrentHashMap<>();
+        // Порядок вставки: итерация идёт от самой старой записи к самой свежей
+        private final LinkedHashMap<String, Entry<V>> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Entry<V>> protectedSeg = new LinkedHashMap<>();
+
+        Shard(int probationCap, int protectedCap, LongAdder evictions) {
+            this.probationCap = probationCap;
+            this.protectedCap = protectedCap;
+            this.evictions = evictions;
+        }
+
+        V get(String key) {
+            Entry<V> e = index.get(key);
+            if (e == null) return null;
+            if (e.isProtected) {
+                if (!e.referenced) e.referenced = true;   // запись только при смене — строка кэша не мечется между ядрами
+                return e.value;
+            }
+            promote(e);
+            return e.value;
+        }
+
+        // Повторное обращение — переносим в protected, вытесненное оттуда возвращаем в probation
+        private synchronized void promote(Entry<V> e) {
+            if (!probation.remove(e.key, e)) return;   // уже перенесена или вытеснена другим потоком
+            e.isProtected = true;
+            protectedSeg.put(e.key, e);
+            while (protectedSeg.size() > protectedCap) {
+                Entry<V> eldest = removeEldest(protectedSeg);
+                if (eldest.referenced) {
+                    // второй шанс: к записи обращались — в хвост protected
+                    eldest.referenced = false;
+                    protectedSeg.put(eldest.key, eldest);
+                } else {
+                    eldest.isProtected = false;
+                    probation.put(eldest.key, eldest);
+                }
+            }
+            trimProbation();
+        }
+
+        synchronized void put(String key, V value) {
+            Entry<V> e = index.get(key);
+            if (e != null) {
+                e.value = value;
+                if (!e.isProtected) {
+                    probation.remove(key);
+                    probation.put(key, e);
+                }
+                return;
+            }
+            e = new Entry<>(key, value);
+            probation.put(key, e);
+            index.put(key, e);
+            trimProbation();
+        }
+
+        private void trimProbation() {
+            while (probation.size() > probationCap) {
+                Entry<V> eldest = removeEldest(probation);
+                index.remove(eldest.key, eldest);
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            index.clear();
+            probation.clear();
+            protectedSeg.clear();
+        }
+
+        int size() {
+            return index.size();
+        }
+
+        private static <V> Entry<V> removeEldest(LinkedHashMap<String, Entry<V>> map) {
+            Iterator<Map.Entry<String, Entry<V>>> it = map.entrySet().iterator();
+            Entry<V> eldest = it.next().getValue();
+            it.remove();
+            return eldest;
+        }
+    }
+}
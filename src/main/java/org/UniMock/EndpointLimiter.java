@@ -0,0 +1,106 @@
+package org.UniMock;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ёмкость эмулируемого бэкенда (секция "Limits"): RPS и число одновременных запросов.
+ *
+ * RPS — token bucket в форме GCRA: одно AtomicLong "теоретическое время прибытия"
+ * и один CAS на запрос. Одновременные запросы — AtomicInteger; слот освобождается,
+ * когда ответ ушёл клиенту (с учётом задержки Response time), см. releaseFor().
+ *
+ * Превышение — ответ Status (по умолчанию 429 для RPS и 503 для конкуренции)
+ * с заголовком Retry-After.
+ */
+public class EndpointLimiter {
+
+    /** Атрибут запроса с лимитером, слот которого занят до отправки ответа. */
+    public static final String LIMITER_ATTR = "unimock.limiter";
+
+    private final long intervalNanos;     // 0 — без лимита RPS
+    private final long burstNanos;        // допустимый «запас» burst-запросов
+    private final int maxConcurrent;      // 0 — без лимита одновременных запросов
+    private final int status;             // -1 — по умолчанию для причины
+    private final int retryAfterSeconds;  // -1 — вычислить
+
+    private final AtomicLong tat = new AtomicLong(System.nanoTime());
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param rps        запросов в секунду, 0 — без лимита
+     * @param burst      сколько запросов можно принять подряд сверх ровного темпа, минимум 1
+     * @param concurrent одновременных запросов, 0 — без лимита
+     */
+    public EndpointLimiter(double rps, int burst, int concurrent, int status, int retryAfterSeconds) {
+        if (rps < 0 || concurrent < 0) throw new IllegalArgumentException("Limits must not be negative");
+        this.intervalNanos = rps > 0 ? Math.max(1, (long) (1_000_000_000L / rps)) : 0;
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.maxConcurrent = concurrent;
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /** Держит ли лимитер слот до конца запроса (его надо вернуть через release). */
+    public boolean capsConcurrency() {
+        return maxConcurrent > 0;
+    }
+
+    /**
+     * @return null — запрос пропущен (и при capsConcurrency() занял слот),
+     *         иначе готовый ответ-отказ
+     */
+    public ResponseData tryAcquire(Metrics.TemplateMetrics metrics) {
+        if (maxConcurrent > 0 && inFlight.incrementAndGet() > maxConcurrent) {
+            inFlight.decrementAndGet();
+            metrics.rejected(Metrics.Reject.concurrency);
+            return reject(503, "{\"error\":\"too many concurrent requests\"}", 1);
+        }
+        if (intervalNanos > 0) {
+            long wait = takeToken();
+            if (wait > 0) {
+                release();
+                metrics.rejected(Metrics.Reject.rate);
+                return reject(429, "{\"error\":\"rate limit exceeded\"}", (wait + 999_999_999L) / 1_000_000_000L);
+            }
+        }
+        return null;
+    }
+
+    // @return 0 — токен взят, иначе через сколько наносекунд он появится
+    private long takeToken() {
+        long now = System.nanoTime();
+        while (true) {
+            long cur = tat.get();
+            long next = (cur - now > 0 ? cur : now) + intervalNanos;
+            long wait = next - now - burstNanos;
+            if (wait > 0) return wait;
+            if (tat.compareAndSet(cur, next)) return 0;
+        }
+    }
+
+    public void release() {
+        if (maxConcurrent > 0) inFlight.decrementAndGet();
+    }
+
+    /** Освобождает слот, занятый запросом (если он есть). Повторный вызов ничего не делает. */
+    public static void releaseFor(HttpServletRequest request) {
+        EndpointLimiter limiter = takeFrom(request);
+        if (limiter != null) limiter.release();
+    }
+
+    /** Забирает лимитер из атрибутов запроса, чтобы освободить слот позже (например, после задержки). */
+    public static EndpointLimiter takeFrom(HttpServletRequest request) {
+        Object limiter = request.getAttribute(LIMITER_ATTR);
+        if (limiter == null) return null;
+        request.removeAttribute(LIMITER_ATTR);
+        return (EndpointLimiter) limiter;
+    }
+
+    private ResponseData reject(int defaultStatus, String body, long computedRetryAfter) {
+        long retryAfter = retryAfterSeconds >= 0 ? retryAfterSeconds : Math.max(1, computedRetryAfter);
+        return new ResponseData(status > 0 ? status : defaultStatus, body, Map.of("Retry-After", String.valueOf(retryAfter)));
+    }
+}
@@ -0,0 +1,82 @@
+package org.UniMock;
+
+import java.util.Locale;
+import java.util.random.RandomGenerator;
+
+/**
+ * Правдоподобные персональные данные без внешних библиотек:
+ *
+ *   first: firstName
+ *   last: lastName
+ *   name: fullName
+ *   mail: email; corp.example       (домен необязателен)
+ *
+ * Справочники — статические массивы, строчные формы для email посчитаны заранее,
+ * поэтому запрос стоит пары случайных чисел и одной склейки строки.
+ */
+final class FakeData {
+
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda", "William", "Elizabeth",
+            "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+            "Daniel", "Nancy", "Matthew", "Lisa", "Anthony", "Betty", "Mark", "Margaret", "Donald", "Sandra",
+            "Steven", "Ashley", "Paul", "Emily", "Andrew", "Donna", "Joshua", "Michelle", "Kenneth", "Carol",
+            "Kevin", "Amanda", "Brian", "Melissa", "George", "Deborah", "Timothy", "Stephanie", "Ronald", "Rebecca",
+            "Ivan", "Anna", "Dmitry", "Elena", "Sergey", "Olga", "Alexey", "Natalia", "Pavel", "Irina"
+    };
+
+    private static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+            "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson",
+            "Walker", "Young", "Allen", "King", "Wright", "Scott", "Torres", "Nguyen", "Hill", "Flores",
+            "Green", "Adams", "Nelson", "Baker", "Hall", "Rivera", "Campbell", "Mitchell", "Carter", "Roberts",
+            "Ivanov", "Petrov", "Sidorov", "Smirnov", "Kuznetsov", "Popov", "Volkov", "Sokolov", "Lebedev", "Novikov"
+    };
+
+    private static final String[] FIRST_LOWER = lower(FIRST_NAMES);
+    private static final String[] LAST_LOWER = lower(LAST_NAMES);
+    private static final String DEFAULT_DOMAIN = "example.com";
+
+    private FakeData() {
+    }
+
+    private static String[] lower(String[] names) {
+        String[] out = new String[names.length];
+        for (int i = 0; i < names.length; i++) out[i] = names[i].toLowerCase(Locale.ROOT);
+        return out;
+    }
+
+    private static int pick(RandomGenerator random, String[] from) {
+        return random.nextInt(from.length);
+    }
+
+    static CompiledVar firstName(String condition) {
+        return ctx -> FIRST_NAMES[pick(ctx.random(), FIRST_NAMES)];
+    }
+
+    static CompiledVar lastName(String condition) {
+        return ctx -> LAST_NAMES[pick(ctx.random(), LAST_NAMES)];
+    }
+
+    static CompiledVar fullName(String condition) {
+        return ctx -> {
+            RandomGenerator random = ctx.random();
+            return FIRST_NAMES[pick(random, FIRST_NAMES)] + ' ' + LAST_NAMES[pick(random, LAST_NAMES)];
+        };
+    }
+
+    /** email("corp.example") — first.last42@domain; цифры снижают число совпадений в больших выборках. */
+    static CompiledVar email(String condition) {
+        String domain = condition == null || condition.isBlank() ? DEFAULT_DOMAIN : condition.trim();
+        if (domain.contains("@") || domain.contains(" ")) {
+            throw new IllegalArgumentException("email: invalid domain '" + domain + "'");
+        }
+        String suffix = "@" + domain;
+        return ctx -> {
+            RandomGenerator random = ctx.random();
+            return FIRST_LOWER[pick(random, FIRST_LOWER)] + '.' + LAST_LOWER[pick(random, LAST_LOWER)]
+                    + random.nextInt(100) + suffix;
+        };
+    }
+}
@@ -0,0 +1,229 @@
+package org.UniMock;
+
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.SocketChannelEndPoint;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.Request;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+/**
+ * Сбои на уровне соединения (секция "Faults") — то, как выглядят настоящие аварии:
+ *
+ *   Faults:
+ *   Percent: 5
+ *   reset: 3                 — соединение рвётся (RST) до ответа
+ *   partial: 2; 0.3          — заголовки и 30% тела, затем обрыв
+ *   stall: 1; 30s            — заголовки, затем тишина 30 секунд и обрыв
+ *   drip: 4; 200ms; 1        — всё тело, но по 1 байту раз в 200 мс
+ *
+ * Число после имени — вес: сбой выбирается пропорционально весам среди Percent% запросов.
+ * Сбой наступает после задержки Response time и использует тело, которое отдал бы шаблон
+ * (успешное или из Error Config).
+ *
+ * Всё выполняется асинхронно: ожидание и капли идут по таймеру DelayedResponseHandler,
+ * поток пула занят только на время записи очередного куска.
+ */
+public final class FaultInjector {
+
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(FaultInjector.class);
+
+    public enum Type { reset, partial, stall, drip }
+
+    /** Один вид сбоя из секции с его параметрами. */
+    public static final class Fault {
+        public final Type type;
+        final int weight;
+        final double fraction;     // partial: доля тела до обрыва
+        final long intervalMs;     // stall: сколько молчать; drip: пауза между каплями
+        final int dripBytes;       // drip: байт за раз
+
+        Fault(Type type, int weight, double fraction, long intervalMs, int dripBytes) {
+            this.type = type;
+            this.weight = weight;
+            this.fraction = fraction;
+            this.intervalMs = intervalMs;
+            this.dripBytes = dripBytes;
+        }
+    }
+
+    private final int percent;
+    private final Fault[] faults;
+    private final int totalWeight;
+
+    private FaultInjector(int percent, List<Fault> faults) {
+        this.percent = percent;
+        this.faults = faults.toArray(new Fault[0]);
+        int w = 0;
+        for (Fault f : faults) w += f.weight;
+        this.totalWeight = w;
+    }
+
+    /** null — сбоев нет (Percent 0 или ни одного вида). */
+    public static FaultInjector parse(List<String> lines) {
+        int percent = 0;
+        List<Fault> faults = new ArrayList<>();
+        for (String line : lines) {
+            if (!line.contains(":")) continue;
+            String[] p = line.split(":", 2);
+            String name = p[0].trim();
+            if (name.equals("Percent")) {
+                percent = Integer.parseInt(p[1].replace("%", "").trim());
+                continue;
+            }
+            Type type;
+            try {
+                type = Type.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Faults: unknown fault '" + name + "'");
+            }
+            String[] args = p[1].split(";");
+            int weight = Integer.parseInt(args[0].trim());
+            if (weight < 0) throw new IllegalArgumentException("Faults: negative weight for " + name);
+            String a1 = args.length > 1 ? args[1].trim() : "";
+            String a2 = args.length > 2 ? args[2].trim() : "";
+            switch (type) {
+                case partial:
+                    faults.add(new Fault(type, weight, a1.isEmpty() ? 0.5 : Double.parseDouble(a1), 0, 0));
+                    break;
+                case stall:
+                    faults.add(new Fault(type, weight, 0, a1.isEmpty() ? 30_000 : parseMillis(a1), 0));
+                    break;
+                case drip:
+                    faults.add(new Fault(type, weight, 0, a1.isEmpty() ? 100 : parseMillis(a1),
+                            a2.isEmpty() ? 1 : Math.max(1, Integer.parseInt(a2))));
+                    break;
+                default:
+                    faults.add(new Fault(type, weight, 0, 0, 0));
+                    break;
+            }
+        }
+        if (percent <= 0 || faults.isEmpty()) return null;
+        if (faults.stream().mapToInt(f -> f.weight).sum() <= 0) return null;
+        return new FaultInjector(percent, faults);
+    }
+
+    // 250, 250ms, 30s
+    private static long parseMillis(String s) {
+        if (s.endsWith("ms")) return Long.parseLong(s.substring(0, s.length() - 2).trim());
+        if (s.endsWith("s")) return TimeUnit.SECONDS.toMillis(Long.parseLong(s.substring(0, s.length() - 1).trim()));
+        return Long.parseLong(s);
+    }
+
+    /** @return сбой для этого запроса или null */
+    public Fault pick(RandomGenerator random) {
+        if (random.nextInt(100) >= percent) return null;
+        int r = random.nextInt(totalWeight);
+        for (Fault f : faults) {
+            r -= f.weight;
+            if (r < 0) return f;
+        }
+        return faults[faults.length - 1];
+    }
+
+    // ---------------------------------------------------------------- исполнение
+
+    /**
+     * Разыгрывает сбой на уже начатом async-запросе. Статус и заголовки ответа выставлены,
+     * body — тело, которое ушло бы клиенту. onDone вызывается один раз, когда сбой отыгран.
+     */
+    public static void execute(Fault fault, HttpServletRequest request, HttpServletResponse response,
+                               byte[] body, AsyncContext ctx, Runnable onDone) {
+        try {
+            switch (fault.type) {
+                case reset:
+                    reset(request);
+                    onDone.run();
+                    break;
+                case partial: {
+                    response.setContentLength(body.length);
+                    ServletOutputStream out = response.getOutputStream();
+                    out.write(body, 0, (int) (body.length * Math.min(Math.max(fault.fraction, 0), 1)));
+                    out.flush();
+                    reset(request);
+                    onDone.run();
+                    break;
+                }
+                case stall:
+                    response.setContentLength(body.length);
+                    response.flushBuffer();   // клиент получает заголовки и ждёт тело
+                    DelayedResponseHandler.schedule(() -> ctx.start(() -> {
+                        reset(request);
+                        onDone.run();
+                    }), TimeUnit.MILLISECONDS.toNanos(fault.intervalMs));
+                    break;
+                case drip:
+                    response.setContentLength(body.length);
+                    response.flushBuffer();
+                    new Drip(fault, response, body, ctx, onDone).run();
+                    break;
+            }
+        } catch (IOException e) {
+            logger.debug("Fault {} write failed: {}", fault.type, e.getMessage());
+            onDone.run();
+        }
+    }
+
+    /** Тело по несколько байт через равные паузы; между каплями поток не занят. */
+    private static final class Drip implements Runnable {
+        private final Fault fault;
+        private final HttpServletResponse response;
+        private final byte[] body;
+        private final AsyncContext ctx;
+        private final Runnable onDone;
+        private int pos;
+
+        Drip(Fault fault, HttpServletResponse response, byte[] body, AsyncContext ctx, Runnable onDone) {
+            this.fault = fault;
+            this.response = response;
+            this.body = body;
+            this.ctx = ctx;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (pos < body.length) {
+                    int n = Math.min(fault.dripBytes, body.length - pos);
+                    ServletOutputStream out = response.getOutputStream();
+                    out.write(body, pos, n);
+                    out.flush();
+                    pos += n;
+                }
+            } catch (IOException e) {
+                logger.debug("Drip write failed: {}", e.getMessage());   // клиент не дождался
+                onDone.run();
+                return;
+            }
+            if (pos >= body.length) {
+                onDone.run();
+                return;
+            }
+            DelayedResponseHandler.schedule(() -> ctx.start(this), TimeUnit.MILLISECONDS.toNanos(fault.intervalMs));
+        }
+    }
+
+    // HTTP/1.1: SO_LINGER=0 и закрытие — клиент получает RST; HTTP/2: abort сбрасывает только поток
+    private static void reset(HttpServletRequest request) {
+        HttpChannel channel = Request.getBaseRequest(request).getHttpChannel();
+        EndPoint endPoint = channel.getEndPoint();
+        if (endPoint instanceof SocketChannelEndPoint) {
+            try {
+                ((SocketChannelEndPoint) endPoint).getSocket().setSoLinger(true, 0);
+            } catch (IOException e) {
+                logger.debug("Cannot set SO_LINGER for reset: {}", e.getMessage());
+            }
+        }
+        channel.abort(new IOException("fault injected: connection reset"));
+    }
+}
@@ -0,0 +1,250 @@
+package org.UniMock;
+
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тело успешного ответа из внешнего файла (секция "Body file") — для выгрузок и отчётов в десятки МБ.
+ *
+ *   Body file:
+ *   Path: reports/export.csv      (относительно bodies.path)
+ *   Content-Type: text/csv
+ *   Chunked: true                 (Transfer-Encoding: chunked вместо Content-Length)
+ *   Chunk size: 64KB
+ *   Bandwidth: 256KB              (байт в секунду — имитация медленного канала)
+ *
+ * Файл отображается в память (mmap) один раз при загрузке шаблона и не попадает ни в String,
+ * ни в кучу: на запрос берётся duplicate() общего буфера, и Jetty пишет его срезы в сокет напрямую.
+ * Файл целиком уходит асинхронно (HttpOutput.sendContent), куски chunked и медленного канала —
+ * по одному через ctx.start / таймер DelayedResponseHandler, поток между ними не занят.
+ *
+ * Отображения кэшируются по пути, размеру и времени изменения: перезагрузка шаблона с тем же
+ * файлом не создаёт новое. Явно отображение не освобождается — его могут дочитывать текущие
+ * запросы, — память вернёт GC, когда на буфер не останется ссылок.
+ *
+ * Ограничение: файл нельзя обрезать или переписывать на месте, пока он отдаётся, — чтение
+ * отображения за новым концом файла роняет JVM (SIGBUS). Новую версию кладите рядом и
+ * переименовывайте поверх старой: до перезагрузки шаблона отдаётся прежнее содержимое.
+ * Размер файла сверяется с отображением при перезагрузке шаблона и перед каждой отдачей,
+ * так что обрезанный на месте файл не начнёт отдаваться.
+ */
+public final class FileBody {
+
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(FileBody.class);
+
+    private static final Map<Path, Mapping> MAPPINGS = new ConcurrentHashMap<>();
+
+    private static final class Mapping {
+        final ByteBuffer buffer;
+        final long modified;
+        final Object fileKey;   // inode; null — ОС его не даёт (Windows, там отображённый файл и так не обрезать)
+
+        Mapping(ByteBuffer buffer, long modified, Object fileKey) {
+            this.buffer = buffer;
+            this.modified = modified;
+            this.fileKey = fileKey;
+        }
+    }
+
+    public final Path path;
+    public final String contentType;   // null — как у обычных ответов
+    public final boolean chunked;
+    public final int chunkSize;
+    public final long bytesPerSecond;   // 0 — без ограничения
+    private final ByteBuffer mapped;    // только для чтения, позиция не меняется
+    private final Object fileKey;
+
+    private FileBody(Path path, Mapping mapping, String contentType, boolean chunked, int chunkSize, long bytesPerSecond) {
+        this.path = path;
+        this.mapped = mapping.buffer;
+        this.fileKey = mapping.fileKey;
+        this.contentType = contentType;
+        this.chunked = chunked;
+        this.bytesPerSecond = bytesPerSecond;
+        // С ограничением полосы — не реже десяти кусков в секунду, иначе поток идёт рывками
+        this.chunkSize = bytesPerSecond > 0
+                ? (int) Math.max(1024, Math.min(chunkSize, bytesPerSecond / 10))
+                : chunkSize;
+    }
+
+    public static FileBody open(Path path, String contentType, boolean chunked, int chunkSize, long bytesPerSecond)
+            throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        return new FileBody(key, map(key), contentType, chunked, chunkSize, bytesPerSecond);
+    }
+
+    // Отображение из кэша; новое — только если файл изменился
+    private static Mapping map(Path key) throws IOException {
+        try (FileChannel ch = FileChannel.open(key, StandardOpenOption.READ)) {
+            long size = ch.size();
+            BasicFileAttributes attrs = Files.readAttributes(key, BasicFileAttributes.class);
+            long modified = attrs.lastModifiedTime().toMillis();
+            Mapping cached = MAPPINGS.get(key);
+            if (cached != null && cached.buffer.capacity() == size && cached.modified == modified
+                    && Objects.equals(cached.fileKey, attrs.fileKey())) {
+                return cached;
+            }
+            if (cached != null && Objects.equals(cached.fileKey, attrs.fileKey()) && size < cached.buffer.capacity()) {
+                logger.warn("Body file {} shrank from {} to {} bytes while mapped; replace such files by rename, "
+                        + "not in place", key, cached.buffer.capacity(), size);
+            }
+            if (size > Integer.MAX_VALUE) throw new IOException("file is larger than 2 GB: " + key);
+            // отображение живёт и после закрытия канала
+            Mapping mapping = new Mapping(ch.map(FileChannel.MapMode.READ_ONLY, 0, size), modified, attrs.fileKey());
+            MAPPINGS.put(key, mapping);
+            return mapping;
+        }
+    }
+
+    /** Разбирает размер вида 65536, 64KB, 2MB. */
+    public static long parseSize(String text) {
+        String s = text.trim().toUpperCase();
+        long unit = 1;
+        if (s.endsWith("KB")) unit = 1024;
+        else if (s.endsWith("MB")) unit = 1024 * 1024;
+        if (unit > 1) s = s.substring(0, s.length() - 2).trim();
+        return (long) (Double.parseDouble(s) * unit);
+    }
+
+    public int size() {
+        return mapped.capacity();
+    }
+
+    /** Отдаёт файл целиком на текущем потоке; ограничение полосы — сном. Только для виртуальных потоков. */
+    public void writeTo(HttpServletResponse response) throws IOException {
+        ByteBuffer buf = begin(response);
+        long started = System.nanoTime();
+        while (buf.hasRemaining()) {
+            writeChunk(response, buf);
+            long wait = nextChunkAt(started, buf.position()) - System.nanoTime();
+            if (wait > 0 && buf.hasRemaining()) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("throttled write interrupted");
+                }
+            }
+        }
+    }
+
+    /**
+     * Отдаёт файл, не занимая поток: целиком — одной асинхронной записью, кусками — между ними поток свободен.
+     * onDone вызывается один раз — после последнего байта или при ошибке записи.
+     */
+    public void stream(HttpServletResponse response, AsyncContext ctx, Runnable onDone) {
+        new Pump(response, ctx, onDone).run();
+    }
+
+    private final class Pump implements Runnable {
+        private final HttpServletResponse response;
+        private final AsyncContext ctx;
+        private final Runnable onDone;
+        private ByteBuffer buf;
+        private long started;
+
+        Pump(HttpServletResponse response, AsyncContext ctx, Runnable onDone) {
+            this.response = response;
+            this.ctx = ctx;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (buf == null) {
+                    buf = begin(response);
+                    started = System.nanoTime();
+                    if (sendWhole(response, buf)) return;
+                }
+                writeChunk(response, buf);
+            } catch (IOException e) {
+                failed(e);
+                return;
+            }
+            if (!buf.hasRemaining()) {
+                onDone.run();
+                return;
+            }
+            long wait = nextChunkAt(started, buf.position()) - System.nanoTime();
+            if (wait > 0) DelayedResponseHandler.schedule(() -> ctx.start(this), wait);
+            else ctx.start(this);
+        }
+
+        // Без chunked и ограничения полосы — весь файл одной асинхронной записью
+        private boolean sendWhole(HttpServletResponse response, ByteBuffer buf) throws IOException {
+            if (chunked || bytesPerSecond > 0) return false;
+            ServletOutputStream out = response.getOutputStream();
+            if (!(out instanceof HttpOutput)) return false;
+            ((HttpOutput) out).sendContent(buf, new Callback() {
+                @Override
+                public void succeeded() {
+                    onDone.run();
+                }
+
+                @Override
+                public void failed(Throwable x) {
+                    Pump.this.failed(x);
+                }
+            });
+            return true;
+        }
+
+        private void failed(Throwable e) {
+            logger.debug("File body {} write failed: {}", path, e.getMessage());
+            if (!response.isCommitted()) response.setStatus(500);
+            onDone.run();
+        }
+    }
+
+    private ByteBuffer begin(HttpServletResponse response) throws IOException {
+        // обрезанный файл за концом отображения читать нельзя (см. ограничение выше);
+        // файл, заменённый переименованием, — другой inode, старое отображение остаётся целым
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        if (Objects.equals(attrs.fileKey(), fileKey) && attrs.size() < mapped.capacity()) {
+            throw new IOException("file " + path + " shrank below the mapped " + mapped.capacity() + " bytes");
+        }
+        if (!chunked) response.setContentLengthLong(mapped.capacity());
+        return mapped.duplicate();
+    }
+
+    // Момент, не раньше которого можно слать следующий кусок, чтобы уложиться в bytesPerSecond
+    private long nextChunkAt(long started, long sent) {
+        if (bytesPerSecond <= 0) return 0;
+        return started + (long) (sent * 1e9 / bytesPerSecond);
+    }
+
+    private void writeChunk(HttpServletResponse response, ByteBuffer buf) throws IOException {
+        // без chunked и ограничения полосы — одной записью на весь файл
+        int n = chunked || bytesPerSecond > 0 ? Math.min(chunkSize, buf.remaining()) : buf.remaining();
+        ByteBuffer slice = buf.slice(buf.position(), n);
+        ServletOutputStream out = response.getOutputStream();
+        if (out instanceof HttpOutput) {
+            ((HttpOutput) out).write(slice);   // срез mmap уходит в сокет без копии в кучу
+        } else {
+            byte[] copy = new byte[n];
+            slice.get(copy);
+            out.write(copy);
+        }
+        // куски chunked и медленного канала должны уходить клиенту сразу, а не копиться в буфере Jetty
+        if (chunked || bytesPerSecond > 0) out.flush();
+        buf.position(buf.position() + n);
+    }
+}
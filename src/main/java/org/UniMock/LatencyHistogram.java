@@ -0,0 +1,104 @@
+package org.UniMock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Лог-линейная гистограмма задержек в духе HdrHistogram.
+ *
+ * Значения в микросекундах; до 16 мкс — точно, дальше каждая степень двойки
+ * делится на 8 поддиапазонов (погрешность не хуже ~12%). Верхняя граница ~35 минут.
+ * Счётчики разнесены по нескольким полосам (по id потока), чтобы потоки
+ * Jetty не дрались за одни и те же ячейки; запись — один incrementAndGet без блокировок.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;           // поддиапазонов на степень двойки
+    private static final int MAX_MSB = 31;                  // 2^31 мкс ≈ 35 минут
+    static final int BUCKETS = 2 * SUB + (MAX_MSB - SUB_BITS) * SUB;
+    private static final int STRIPES = 4;                   // степень двойки
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * STRIPES);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void recordNanos(long nanos) {
+        if (nanos < 0) nanos = 0;
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKETS + bucket(nanos / 1000));
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    public long count() { return count.sum(); }
+    public long sumNanos() { return sumNanos.sum(); }
+
+    /** Значение квантиля q (0..1) в наносекундах — середина соответствующего бакета. */
+    public long quantileNanos(double q) {
+        long[] merged = merged();
+        long total = 0;
+        for (long c : merged) total += c;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += merged[b];
+            if (seen >= Math.max(rank, 1)) {
+                return (lowerBound(b) + upperBound(b)) / 2 * 1000;
+            }
+        }
+        return upperBound(BUCKETS - 1) * 1000;
+    }
+
+    /**
+     * Накопленные счётчики для экспорта как Prometheus histogram: result[i] — значений меньше
+     * boundsMicros[i] (границы по возрастанию, степени двойки совпадают с краями бакетов
+     * и дают точный счёт), последний элемент — всего значений, согласованно с остальными.
+     */
+    public long[] cumulative(long[] boundsMicros) {
+        long[] merged = merged();
+        long[] result = new long[boundsMicros.length + 1];
+        long seen = 0;
+        int i = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            while (i < boundsMicros.length && upperBound(b) > boundsMicros[i]) result[i++] = seen;
+            seen += merged[b];
+        }
+        while (i < boundsMicros.length) result[i++] = seen;
+        result[boundsMicros.length] = seen;
+        return result;
+    }
+
+    // Сумма полос по каждому бакету
+    private long[] merged() {
+        long[] merged = new long[BUCKETS];
+        for (int s = 0; s < STRIPES; s++) {
+            for (int b = 0; b < BUCKETS; b++) {
+                merged[b] += counts.get(s * BUCKETS + b);
+            }
+        }
+        return merged;
+    }
+
+    static int bucket(long micros) {
+        if (micros < 2 * SUB) return (int) micros;
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        if (msb > MAX_MSB) return BUCKETS - 1;
+        int shift = msb - SUB_BITS;
+        int sub = (int) (micros >>> shift) & (SUB - 1);
+        return 2 * SUB + (msb - SUB_BITS - 1) * SUB + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < 2 * SUB) return bucket;
+        int msb = (bucket - 2 * SUB) / SUB + SUB_BITS + 1;
+        int sub = (bucket - 2 * SUB) % SUB;
+        return (long) (SUB + sub) << (msb - SUB_BITS);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 2 * SUB) return bucket + 1;
+        return lowerBound(bucket) + (1L << ((bucket - 2 * SUB) / SUB + 1));
+    }
+}
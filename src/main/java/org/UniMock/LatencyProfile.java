@@ -0,0 +1,137 @@
+package org.UniMock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+/**
+ * Время ответа шаблона (секция "Response time"): одно число или распределение.
+ *
+ *   150                              — всегда 150 мс, как раньше
+ *   uniform 50-200                   — равномерно от 50 до 200 мс
+ *   normal mean=100 sd=20            — нормальное, отрицательные значения → 0
+ *   lognormal median=40 sigma=0.8    — логнормальное; вместо sigma можно p99=400
+ *   p50=20 p99=300 p999=1200         — таблица перцентилей, между точками линейно;
+ *                                      ниже первой точки — от p0 (по умолчанию 0), выше последней — её значение
+ *
+ * Значение выбирается на каждый запрос из RequestContext.random(): без блокировок,
+ * а с "Random seed" — воспроизводимо.
+ */
+@FunctionalInterface
+public interface LatencyProfile {
+
+    /** @return целевое время ответа в миллисекундах, не меньше 0 */
+    long sampleMs(RandomGenerator random);
+
+    /** Разбирает строку секции. Ошибка в записи — IllegalArgumentException с описанием. */
+    static LatencyProfile parse(String spec) {
+        String s = spec.trim();
+        String[] words = s.split("\\s+");
+        switch (words[0]) {
+            case "uniform":
+                return uniform(words);
+            case "normal":
+                return normal(keyValues(words, 1));
+            case "lognormal":
+                return logNormal(keyValues(words, 1));
+            default:
+                if (s.startsWith("p")) return percentiles(keyValues(words, 0));
+                long ms = Long.parseLong(s);
+                if (ms < 0) throw new IllegalArgumentException("negative response time: " + s);
+                return random -> ms;
+        }
+    }
+
+    // uniform 50-200 | uniform min=50 max=200
+    private static LatencyProfile uniform(String[] words) {
+        double min, max;
+        if (words.length == 2 && words[1].contains("-")) {
+            String[] p = words[1].split("-", 2);
+            min = Double.parseDouble(p[0]);
+            max = Double.parseDouble(p[1]);
+        } else {
+            Map<String, Double> kv = keyValues(words, 1);
+            min = required(kv, "min");
+            max = required(kv, "max");
+        }
+        if (min < 0 || max < min) throw new IllegalArgumentException("uniform: need 0 <= min <= max");
+        if (min == max) return random -> Math.round(min);
+        return random -> Math.round(random.nextDouble(min, max));
+    }
+
+    private static LatencyProfile normal(Map<String, Double> kv) {
+        double mean = required(kv, "mean");
+        double sd = required(kv, "sd");
+        if (mean < 0 || sd < 0) throw new IllegalArgumentException("normal: mean and sd must be >= 0");
+        return random -> Math.max(0, Math.round(mean + sd * random.nextGaussian()));
+    }
+
+    private static LatencyProfile logNormal(Map<String, Double> kv) {
+        double median = required(kv, "median");
+        double sigma;
+        if (kv.containsKey("sigma")) {
+            sigma = kv.get("sigma");
+        } else {
+            // p99 = median * exp(2.326 * sigma)
+            double p99 = required(kv, "p99");
+            if (p99 < median) throw new IllegalArgumentException("lognormal: p99 must be >= median");
+            sigma = Math.log(p99 / median) / 2.3263478740408408;
+        }
+        if (median <= 0 || sigma < 0) throw new IllegalArgumentException("lognormal: need median > 0 and sigma >= 0");
+        double mu = Math.log(median);
+        return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    private static LatencyProfile percentiles(Map<String, Double> kv) {
+        Map<Double, Double> points = new HashMap<>();
+        points.put(0.0, 0.0);
+        for (Map.Entry<String, Double> e : kv.entrySet()) {
+            points.put(quantile(e.getKey()), e.getValue());
+        }
+        double[] q = points.keySet().stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        double[] ms = new double[q.length];
+        for (int i = 0; i < q.length; i++) {
+            ms[i] = points.get(q[i]);
+            if (ms[i] < 0 || (i > 0 && ms[i] < ms[i - 1])) {
+                throw new IllegalArgumentException("percentiles must be non-negative and non-decreasing: " + kv);
+            }
+        }
+        return random -> {
+            double u = random.nextDouble();
+            int i = Arrays.binarySearch(q, u);
+            if (i >= 0) return Math.round(ms[i]);
+            i = -i - 1;                       // первая точка с q > u
+            if (i == q.length) return Math.round(ms[q.length - 1]);
+            double f = (u - q[i - 1]) / (q[i] - q[i - 1]);
+            return Math.round(ms[i - 1] + f * (ms[i] - ms[i - 1]));
+        };
+    }
+
+    // p50 → 0.5, p99 → 0.99, p999 → 0.999, p99.9 → 0.999, p100 → 1
+    private static double quantile(String key) {
+        if (!key.startsWith("p") || key.length() < 2) throw new IllegalArgumentException("expected pNN, got: " + key);
+        String d = key.substring(1);
+        double percent = d.contains(".") || d.length() <= 2 || d.equals("100")
+                ? Double.parseDouble(d)
+                : Double.parseDouble(d.substring(0, 2) + "." + d.substring(2));
+        if (percent < 0 || percent > 100) throw new IllegalArgumentException("percentile out of range: " + key);
+        return percent / 100;
+    }
+
+    private static Map<String, Double> keyValues(String[] words, int from) {
+        Map<String, Double> kv = new HashMap<>();
+        for (int i = from; i < words.length; i++) {
+            String[] p = words[i].split("=", 2);
+            if (p.length != 2) throw new IllegalArgumentException("expected key=value, got: " + words[i]);
+            kv.put(p[0], Double.parseDouble(p[1]));
+        }
+        return kv;
+    }
+
+    private static double required(Map<String, Double> kv, String key) {
+        Double v = kv.get(key);
+        if (v == null) throw new IllegalArgumentException("missing " + key + "=");
+        return v;
+    }
+}
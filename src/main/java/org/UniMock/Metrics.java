@@ -0,0 +1,193 @@
+package org.UniMock;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики мока в текстовом формате Prometheus (GET /__admin/metrics).
+ *
+ * Счётчики заводятся на шаблон по ключу "METHOD endpoint" и переживают
+ * перезагрузку шаблонов. Шаблон получает ссылку на свои метрики при загрузке,
+ * так что на горячем пути нет ни поиска по карте, ни блокировок — только LongAdder
+ * и полосатые гистограммы.
+ */
+public class Metrics {
+
+    public enum Phase { match, generate, render, delay }
+
+    /** Причина отказа лимитером (секция Limits). */
+    public enum Reject { rate, concurrency }
+
+    // Границы бакетов phase_latency: степени двойки от 8 мкс до ~134 с — края бакетов LatencyHistogram,
+    // поэтому счёт точный, а набор одинаков у всех серий и инстансов (агрегация, heatmap)
+    private static final long[] LATENCY_BOUNDS_MICROS = new long[25];
+    private static final String[] LATENCY_BOUNDS_LE = new String[LATENCY_BOUNDS_MICROS.length];
+    static {
+        for (int i = 0; i < LATENCY_BOUNDS_MICROS.length; i++) {
+            LATENCY_BOUNDS_MICROS[i] = 8L << i;
+            LATENCY_BOUNDS_LE[i] = seconds(LATENCY_BOUNDS_MICROS[i] * 1000);
+        }
+    }
+    private static final Map<String, TemplateMetrics> byTemplate = new ConcurrentHashMap<>();
+    private static final LongAdder notFound = new LongAdder();
+
+    public static class TemplateMetrics {
+        final String method;
+        final String endpoint;
+        final LongAdder requests = new LongAdder();
+        final LongAdder errorsInjected = new LongAdder();
+        final LongAdder[] rejected = {new LongAdder(), new LongAdder()};
+        final LongAdder[] faults = new LongAdder[FaultInjector.Type.values().length];
+        // Гистограммы создаются при первом запросе: шаблонов тысячи, трафик идёт на десятки
+        private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+        TemplateMetrics(String method, String endpoint) {
+            this.method = method;
+            this.endpoint = endpoint;
+            for (int i = 0; i < faults.length; i++) faults[i] = new LongAdder();
+        }
+
+        public void request(boolean errorInjected) {
+            requests.increment();
+            if (errorInjected) errorsInjected.increment();
+        }
+
+        public void rejected(Reject reason) {
+            rejected[reason.ordinal()].increment();
+        }
+
+        public void faulted(FaultInjector.Type type) {
+            faults[type.ordinal()].increment();
+        }
+
+        public void record(Phase phase, long nanos) {
+            histogram(phase).recordNanos(nanos);
+        }
+
+        private LatencyHistogram histogram(Phase phase) {
+            LatencyHistogram h = phases[phase.ordinal()];
+            if (h == null) {
+                synchronized (this) {
+                    h = phases[phase.ordinal()];
+                    if (h == null) {
+                        h = new LatencyHistogram();
+                        phases[phase.ordinal()] = h;
+                    }
+                }
+            }
+            return h;
+        }
+    }
+
+    public static TemplateMetrics forTemplate(Template t) {
+        String method = t.method.toUpperCase();
+        return byTemplate.computeIfAbsent(method + " " + t.endpoint, k -> new TemplateMetrics(method, t.endpoint));
+    }
+
+    public static void notFound() {
+        notFound.increment();
+    }
+
+    /** Текущее состояние в формате Prometheus text exposition 0.0.4. */
+    public static String render() {
+        StringBuilder sb = new StringBuilder(4096);
+        Map<String, TemplateMetrics> sorted = new TreeMap<>(byTemplate);
+
+        sb.append("# HELP unimock_requests_total Requests served by template\n");
+        sb.append("# TYPE unimock_requests_total counter\n");
+        for (TemplateMetrics m : sorted.values()) {
+            if (m.requests.sum() == 0) continue;
+            sb.append("unimock_requests_total{").append(labels(m)).append("} ").append(m.requests.sum()).append('\n');
+        }
+
+        sb.append("# HELP unimock_errors_injected_total Responses switched to the error body by Error Config\n");
+        sb.append("# TYPE unimock_errors_injected_total counter\n");
+        for (TemplateMetrics m : sorted.values()) {
+            if (m.requests.sum() == 0) continue;
+            sb.append("unimock_errors_injected_total{").append(labels(m)).append("} ").append(m.errorsInjected.sum()).append('\n');
+        }
+
+        sb.append("# HELP unimock_requests_rejected_total Requests rejected by Limits (not counted in unimock_requests_total)\n");
+        sb.append("# TYPE unimock_requests_rejected_total counter\n");
+        for (TemplateMetrics m : sorted.values()) {
+            for (Reject reason : Reject.values()) {
+                long n = m.rejected[reason.ordinal()].sum();
+                if (n == 0) continue;
+                sb.append("unimock_requests_rejected_total{").append(labels(m)).append(",reason=\"").append(reason).append("\"} ")
+                        .append(n).append('\n');
+            }
+        }
+
+        sb.append("# HELP unimock_faults_injected_total Connection faults played instead of a response (Faults section)\n");
+        sb.append("# TYPE unimock_faults_injected_total counter\n");
+        for (TemplateMetrics m : sorted.values()) {
+            for (FaultInjector.Type type : FaultInjector.Type.values()) {
+                long n = m.faults[type.ordinal()].sum();
+                if (n == 0) continue;
+                sb.append("unimock_faults_injected_total{").append(labels(m)).append(",type=\"").append(type).append("\"} ")
+                        .append(n).append('\n');
+            }
+        }
+
+        sb.append("# HELP unimock_phase_latency_seconds Time spent per request phase\n");
+        sb.append("# TYPE unimock_phase_latency_seconds histogram\n");
+        for (TemplateMetrics m : sorted.values()) {
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram h = m.phases[phase.ordinal()];
+                if (h == null || h.count() == 0) continue;
+                String l = labels(m) + ",phase=\"" + phase + "\"";
+                long[] cumulative = h.cumulative(LATENCY_BOUNDS_MICROS);
+                for (int i = 0; i < LATENCY_BOUNDS_LE.length; i++) {
+                    sb.append("unimock_phase_latency_seconds_bucket{").append(l).append(",le=\"").append(LATENCY_BOUNDS_LE[i])
+                            .append("\"} ").append(cumulative[i]).append('\n');
+                }
+                long total = cumulative[LATENCY_BOUNDS_LE.length];
+                sb.append("unimock_phase_latency_seconds_bucket{").append(l).append(",le=\"+Inf\"} ").append(total).append('\n');
+                sb.append("unimock_phase_latency_seconds_sum{").append(l).append("} ").append(seconds(h.sumNanos())).append('\n');
+                sb.append("unimock_phase_latency_seconds_count{").append(l).append("} ").append(total).append('\n');
+            }
+        }
+
+        sb.append("# HELP unimock_not_found_total Requests without a matching template\n");
+        sb.append("# TYPE unimock_not_found_total counter\n");
+        sb.append("unimock_not_found_total ").append(notFound.sum()).append('\n');
+
+        EndpointCache<RouteMatch> cache = AppLogic.endpointCache();
+        sb.append("# HELP unimock_endpoint_cache_size Entries in the endpoint cache\n");
+        sb.append("# TYPE unimock_endpoint_cache_size gauge\n");
+        sb.append("unimock_endpoint_cache_size ").append(cache.size()).append('\n');
+        sb.append("# TYPE unimock_endpoint_cache_hits_total counter\n");
+        sb.append("unimock_endpoint_cache_hits_total ").append(cache.hitCount()).append('\n');
+        sb.append("# TYPE unimock_endpoint_cache_misses_total counter\n");
+        sb.append("unimock_endpoint_cache_misses_total ").append(cache.missCount()).append('\n');
+        sb.append("# TYPE unimock_endpoint_cache_evictions_total counter\n");
+        sb.append("unimock_endpoint_cache_evictions_total ").append(cache.evictionCount()).append('\n');
+
+        sb.append("# HELP unimock_access_log_dropped_total Access log entries dropped because the buffer was full or the write failed\n");
+        sb.append("# TYPE unimock_access_log_dropped_total counter\n");
+        sb.append("unimock_access_log_dropped_total ").append(AccessLog.droppedCount()).append('\n');
+
+        sb.append("# HELP unimock_state_entries Keys in the scenario state store\n");
+        sb.append("# TYPE unimock_state_entries gauge\n");
+        sb.append("unimock_state_entries ").append(StateStore.size()).append('\n');
+        sb.append("# TYPE unimock_state_evictions_total counter\n");
+        sb.append("unimock_state_evictions_total ").append(StateStore.evictionCount()).append('\n');
+        sb.append("# TYPE unimock_state_expired_total counter\n");
+        sb.append("unimock_state_expired_total ").append(StateStore.expiredCount()).append('\n');
+        return sb.toString();
+    }
+
+    private static String labels(TemplateMetrics m) {
+        return "method=\"" + escape(m.method) + "\",endpoint=\"" + escape(m.endpoint) + "\"";
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return String.valueOf(nanos / 1e9);
+    }
+}
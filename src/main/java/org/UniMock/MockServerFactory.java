@@ -0,0 +1,114 @@
+package org.UniMock;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.ForwardedRequestCustomizer;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.ExceptionMapper;
+import spark.embeddedserver.EmbeddedServer;
+import spark.embeddedserver.EmbeddedServerFactory;
+import spark.embeddedserver.jetty.EmbeddedJettyServer;
+import spark.embeddedserver.jetty.JettyHandler;
+import spark.embeddedserver.jetty.JettyServerFactory;
+import spark.http.matching.MatcherFilter;
+import spark.route.Routes;
+import spark.staticfiles.StaticFilesConfiguration;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Собственная фабрика встроенного Jetty для Spark.
+ * Повторяет стандартную EmbeddedJettyFactory, но оборачивает обработчик Spark
+ * в DelayedResponseHandler, чтобы задержка ответа не занимала поток Jetty,
+ * а при thread.virtual=true заменяет его на VirtualThreadHandler.
+ * Коннектор тоже создаётся здесь — с настройками http.* из config.properties
+ * (акцепторы, селекторы, таймаут простоя, буфер заголовков, h2c).
+ *
+ * Регистрируется до первого вызова port()/get():
+ *   EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new MockServerFactory());
+ */
+public class MockServerFactory implements EmbeddedServerFactory {
+
+    @Override
+    public EmbeddedServer create(Routes routeMatcher,
+                                 StaticFilesConfiguration staticFilesConfiguration,
+                                 ExceptionMapper exceptionMapper,
+                                 boolean hasMultipleHandler) {
+        MatcherFilter matcherFilter = new MatcherFilter(routeMatcher, staticFilesConfiguration, exceptionMapper, false, hasMultipleHandler);
+        matcherFilter.init(null);
+
+        if (AppLogic.THREAD_VIRTUAL) {
+            Executor executor = VirtualThreadHandler.virtualThreadExecutor();
+            if (executor != null) {
+                System.out.println("🧵 Requests are handled on virtual threads");
+                return new EmbeddedJettyServer(new ServerFactory(), new VirtualThreadHandler(matcherFilter, executor));
+            }
+            System.out.println("⚠️ thread.virtual=true needs Java 21+, using the platform thread pool");
+        }
+
+        JettyHandler sparkHandler = new JettyHandler(matcherFilter);
+        DelayedResponseHandler handler = new DelayedResponseHandler();
+        handler.setHandler(sparkHandler);
+
+        return new EmbeddedJettyServer(new ServerFactory(), handler);
+    }
+
+    /**
+     * Аналог spark.embeddedserver.jetty.JettyServer (он package-private).
+     * EmbeddedJettyServer не создаёт свой коннектор, если у сервера уже есть коннекторы, —
+     * поэтому настроенный ServerConnector добавляется прямо здесь.
+     */
+    static class ServerFactory implements JettyServerFactory {
+
+        @Override
+        public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+            if (maxThreads <= 0) return withConnector(new Server());
+            QueuedThreadPool pool = new QueuedThreadPool(
+                    maxThreads,
+                    minThreads > 0 ? minThreads : 8,
+                    threadTimeoutMillis > 0 ? threadTimeoutMillis : 60000);
+            return withConnector(new Server(pool));
+        }
+
+        @Override
+        public Server create(ThreadPool threadPool) {
+            return withConnector(threadPool != null ? new Server(threadPool) : new Server());
+        }
+
+        // Повторяет SocketConnectorFactory Spark (0.0.0.0, X-Forwarded-*), но с нашими размерами и таймаутами
+        private static Server withConnector(Server server) {
+            HttpConfiguration config = new HttpConfiguration();
+            config.setSecureScheme("https");
+            config.setRequestHeaderSize(AppLogic.HTTP_REQUEST_HEADER_SIZE);
+            config.addCustomizer(new ForwardedRequestCustomizer());
+
+            ConnectionFactory[] factories;
+            if (AppLogic.HTTP_H2C) {
+                // h2c и с prior knowledge, и через Upgrade: h2c с HTTP/1.1
+                HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory(config);
+                h2c.setMaxConcurrentStreams(AppLogic.HTTP_H2_MAX_STREAMS);
+                factories = new ConnectionFactory[]{new HttpConnectionFactory(config), h2c};
+            } else {
+                factories = new ConnectionFactory[]{new HttpConnectionFactory(config)};
+            }
+
+            ServerConnector connector = new ServerConnector(server, AppLogic.HTTP_ACCEPTORS, AppLogic.HTTP_SELECTORS, factories);
+            connector.setHost("0.0.0.0");
+            connector.setPort(AppLogic.PORT);
+            connector.setIdleTimeout(AppLogic.HTTP_IDLE_TIMEOUT);
+            if (AppLogic.HTTP_ACCEPT_QUEUE_SIZE > 0) connector.setAcceptQueueSize(AppLogic.HTTP_ACCEPT_QUEUE_SIZE);
+            server.addConnector(connector);
+
+            System.out.println("🔌 Connector: acceptors=" + connector.getAcceptors()
+                    + ", selectors=" + connector.getSelectorManager().getSelectorCount()
+                    + ", idleTimeout=" + AppLogic.HTTP_IDLE_TIMEOUT + "ms"
+                    + (AppLogic.HTTP_H2C ? ", h2c on" : ""));
+            return server;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.UniMock;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный пул дорогих непотокобезопасных объектов (DocumentBuilder, XPathExpression, буферы).
+ *
+ * Вместо ThreadLocal: на виртуальных потоках каждый запрос идёт в новом потоке, и ThreadLocal
+ * создавал бы объект заново на каждый запрос. Пул не зависит от потоков — объект берётся
+ * на время одной операции и возвращается. Пустой пул создаёт новый объект, переполненный
+ * лишний отбрасывает, так что в покое держится не больше capacity объектов.
+ */
+final class ObjectPool<T> {
+
+    /** Размер по умолчанию: одновременно работающих с объектом потоков обычно не больше ядер. */
+    static final int DEFAULT_CAPACITY = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final ArrayBlockingQueue<T> free;
+    private final Supplier<T> factory;
+
+    ObjectPool(int capacity, Supplier<T> factory) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+    }
+
+    ObjectPool(Supplier<T> factory) {
+        this(DEFAULT_CAPACITY, factory);
+    }
+
+    T acquire() {
+        T obj = free.poll();
+        return obj != null ? obj : factory.get();
+    }
+
+    void release(T obj) {
+        free.offer(obj);
+    }
+}
@@ -0,0 +1,45 @@
+package org.UniMock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Тело статического шаблона (без Vars и подстановок), закодированное один раз при загрузке.
+ * На запрос отдаётся тот же массив — ни рендера, ни копирования, ни перекодирования.
+ *
+ * С response.preGzip=true дополнительно хранится сжатая копия: она уходит клиентам
+ * с Accept-Encoding: gzip, если тело не короче response.preGzipMinSize и сжатие дало выигрыш.
+ *
+ * Массивы общие для всех запросов и не должны изменяться.
+ */
+public final class PreEncodedBody {
+
+    public final byte[] identity;
+    public final byte[] gzip;   // null — сжатой копии нет
+
+    private PreEncodedBody(byte[] identity, byte[] gzip) {
+        this.identity = identity;
+        this.gzip = gzip;
+    }
+
+    public static PreEncodedBody of(byte[] bytes) {
+        byte[] gzip = null;
+        if (AppLogic.RESPONSE_PRE_GZIP && bytes.length >= AppLogic.RESPONSE_PRE_GZIP_MIN_SIZE) {
+            byte[] compressed = gzip(bytes);
+            if (compressed.length < bytes.length) gzip = compressed;
+        }
+        return new PreEncodedBody(bytes, gzip);
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 32);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);   // в память — не случается
+        }
+        return out.toByteArray();
+    }
+}
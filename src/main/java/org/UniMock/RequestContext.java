@@ -0,0 +1,194 @@
+package org.UniMock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Данные одного запроса для генераторов переменных.
+ * Всё читается лениво из RequestInput, причём только те части, которые шаблон
+ * объявил в Template.inputs. Тело разбирается не больше одного раза на формат:
+ * десять переменных jsonParse в шаблоне — один разбор JSON.
+ *
+ * Объект живёт в пределах одного запроса и не потокобезопасен.
+ */
+public class RequestContext {
+
+    // ObjectMapper потокобезопасен после настройки — один на всё приложение
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // DocumentBuilder не потокобезопасен — берём из пула на время разбора и сбрасываем перед использованием.
+    // Не ThreadLocal: на виртуальных потоках он создавал бы фабрику и builder на каждый запрос
+    private static final ObjectPool<DocumentBuilder> DOC_BUILDERS = new ObjectPool<>(() -> {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(false);
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final RequestInput input;
+    private final Set<RequestInput.Part> inputs;
+    public final Map<String,String> pathVars;
+    /** Уже сгенерированные переменные запроса (для ключей stateGet). */
+    public Map<String,String> vars = Map.of();
+    private final StreamingExtractor streaming;   // null — тело только целиком (Template.bodyText)
+    private final RandomGenerator random;
+
+    private String body;
+    private JsonNode json;
+    private Document xml;
+    private Exception xmlError;
+    private Map<String,String> streamedJson;
+    private Map<String,String> streamedXml;
+
+    public RequestContext(RequestInput input,
+                          Map<String,String> pathVars,
+                          Template template) {
+        this.input = input;
+        this.inputs = template.inputs;
+        this.pathVars = pathVars;
+        this.streaming = template.bodyText ? null : template.streaming;
+        this.random = randomFor(template);
+    }
+
+    /**
+     * Источник случайности запроса: ошибки по errorPercent, randomNum, randomString.
+     * Без общего состояния между потоками — никакой конкуренции за seed.
+     */
+    public RandomGenerator random() {
+        return random;
+    }
+
+    // Без "Random seed" — ThreadLocalRandom. С seed — N-й запрос к шаблону всегда получает
+    // одну и ту же последовательность, независимо от того, какой поток его обслуживает.
+    static RandomGenerator randomFor(Template t) {
+        if (t.randomSeed == null) return ThreadLocalRandom.current();
+        long n = t.requestCounter.getAndIncrement();
+        return new SplittableRandom(mix64(t.randomSeed + n * 0x9E3779B97F4A7C15L));
+    }
+
+    // Финализатор MurmurHash3: соседние номера запросов дают независимые seed'ы
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /** Тело запроса; читается и декодируется при первом обращении. */
+    public String body() {
+        if (body == null) {
+            String b = inputs.contains(RequestInput.Part.BODY) ? input.body() : null;
+            body = b != null ? b : "";
+        }
+        return body;
+    }
+
+    public String header(String name) {
+        String v = inputs.contains(RequestInput.Part.HEADERS) ? input.header(name) : null;
+        return v != null ? v : "";
+    }
+
+    public String param(String name) {
+        String v = inputs.contains(RequestInput.Part.PARAMS) ? input.param(name) : null;
+        return v != null ? v : "";
+    }
+
+    public String pathVar(String name) {
+        return pathVars != null ? pathVars.getOrDefault(name, "") : "";
+    }
+
+    /**
+     * Будут ли jsonParse-переменные этого запроса читаться потоково (см. StreamingExtractor).
+     * Решается по Content-Length, тело при этом не читается.
+     */
+    public boolean streamsJson() {
+        return streaming != null && streaming.hasJson() && isLarge();
+    }
+
+    public boolean streamsXml() {
+        return streaming != null && streaming.hasXml() && isLarge();
+    }
+
+    private boolean isLarge() {
+        if (body != null) return StreamingExtractor.isLarge(body.length());
+        return inputs.contains(RequestInput.Part.BODY) && StreamingExtractor.isLarge(input.bodyLength());
+    }
+
+    /** Значение по JsonPointer из одного потокового прохода по телу на все переменные. */
+    public String streamedJson(String pointer) {
+        if (streamedJson == null) {
+            try {
+                streamedJson = body != null
+                        ? streaming.extractJson(new StringReader(body))
+                        : streaming.extractJson(input.bodyStream());
+            } catch (IOException e) {
+                streamedJson = Map.of();   // клиент оборвал тело — как невалидный JSON
+            }
+        }
+        return streamedJson.getOrDefault(pointer, "");
+    }
+
+    public String streamedXml(String expr) throws Exception {
+        if (xmlError != null) throw xmlError;
+        if (streamedXml == null) {
+            try {
+                streamedXml = body != null
+                        ? streaming.extractXml(new StringReader(body))
+                        : streaming.extractXml(input.bodyStream());
+            } catch (Exception e) {
+                xmlError = e;
+                throw e;
+            }
+        }
+        return streamedXml.getOrDefault(expr, "");
+    }
+
+    /** JSON-дерево тела. Если тело не JSON — MissingNode (как и раньше, переменная будет пустой). */
+    public JsonNode json() {
+        if (json == null) {
+            try {
+                JsonNode root = body().isEmpty() ? null : MAPPER.readTree(body());
+                json = root != null ? root : MissingNode.getInstance();
+            } catch (Exception e) {
+                json = MissingNode.getInstance();
+            }
+        }
+        return json;
+    }
+
+    /** DOM тела. Ошибка разбора запоминается и пробрасывается каждой xml-переменной. */
+    public Document xml() throws Exception {
+        if (xmlError != null) throw xmlError;
+        if (xml == null) {
+            try {
+                DocumentBuilder builder = DOC_BUILDERS.acquire();
+                try {
+                    builder.reset();
+                    xml = builder.parse(new InputSource(new StringReader(body())));
+                } finally {
+                    DOC_BUILDERS.release(builder);
+                }
+            } catch (Exception e) {
+                xmlError = e;
+                throw e;
+            }
+        }
+        return xml;
+    }
+}
@@ -0,0 +1,67 @@
+package org.UniMock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ленивый доступ к данным входящего запроса.
+ *
+ * Заголовки, параметры и тело читаются только по запросу генератора — шаблон,
+ * которому они не нужны, не платит ни за копирование, ни за декодирование.
+ * Реализация для Spark — в SparkAppMain, of(...) — для готовых данных (бенчмарки).
+ */
+public interface RequestInput {
+
+    /** Части запроса, которые может читать шаблон (Template.inputs). */
+    enum Part { BODY, HEADERS, PARAMS }
+
+    /** @return тело запроса, null или "" — тела нет */
+    String body();
+
+    /** @return длина тела в байтах по Content-Length, -1 — неизвестна (chunked) */
+    default long bodyLength() {
+        String b = body();
+        return b == null ? 0 : b.length();
+    }
+
+    /**
+     * Тело как поток, без сборки в String — для потокового разбора больших тел.
+     * Читается один раз и вместо body(): после него body() тела уже не увидит.
+     */
+    default InputStream bodyStream() throws IOException {
+        String b = body();
+        return new ByteArrayInputStream(b == null ? new byte[0] : b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return значение заголовка (без учёта регистра имени) или null */
+    String header(String name);
+
+    /** @return значение query-параметра или null */
+    String param(String name);
+
+    /**
+     * Какие части запроса нужны переменным шаблона — по регистрации их типов в VarsGenerator.
+     * $body$ в теле ответа учитывается отдельно.
+     */
+    static Set<Part> partsFor(Collection<VarDef> vars) {
+        Set<Part> parts = EnumSet.noneOf(Part.class);
+        for (VarDef v : vars) {
+            parts.addAll(VarsGenerator.reads(v.type));
+        }
+        return parts;
+    }
+
+    static RequestInput of(String body, Map<String, String> headers, Map<String, String> params) {
+        return new RequestInput() {
+            @Override public String body() { return body; }
+            @Override public String header(String name) { return headers.get(name); }
+            @Override public String param(String name) { return params.get(name); }
+        };
+    }
+}
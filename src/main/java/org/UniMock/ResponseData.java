@@ -1,15 +1,32 @@
 package org.UniMock;
 
+import org.eclipse.jetty.http.HttpField;
+
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 public class ResponseData {
     public int status;
-    public String body;
-    public Map<String,String> headers;
+    public byte[] body;        // уже в UTF-8, Spark отдаёт byte[] без перекодирования
+    public byte[] gzipBody;    // то же тело в gzip (только статические шаблоны с response.preGzip)
+    public FileBody file;      // не null — вместо body отдаётся файл (секция Body file)
+    public FaultInjector.Fault fault;   // не null — вместо ответа разыгрывается сбой (секция Faults)
+    public Map<String,String> headers;        // служебные (Retry-After и т.п.); заголовки шаблона — ниже
+    public String contentType;                // null — application/json
+    public HttpField[] preEncodedHeaders;     // fixed-заголовки шаблона, общие для всех его запросов
+    public HeaderDef[] generatedHeaders;      // генерируемые заголовки шаблона ...
+    public String[] generatedValues;          // ... и их значения для этого запроса
+    public long delayMs = 0;   // сколько ещё держать ответ до отправки
+    public Metrics.TemplateMetrics metrics;   // null — шаблон не найден
+    public EndpointLimiter limiter;           // занятый слот Limits, освобождается после отправки ответа
 
-    public ResponseData(int status, String body, Map<String,String> headers) {
+    public ResponseData(int status, byte[] body, Map<String,String> headers) {
         this.status = status;
         this.body = body;
         this.headers = headers;
     }
+
+    public ResponseData(int status, String body, Map<String,String> headers) {
+        this(status, body.getBytes(StandardCharsets.UTF_8), headers);
+    }
 }
@@ -0,0 +1,14 @@
+package org.UniMock;
+
+import java.util.Map;
+
+/** Результат поиска в RouteTrie: шаблон и значения :var из пути. */
+class RouteMatch {
+    public final Template template;
+    public final Map<String, String> pathVars;
+
+    RouteMatch(Template template, Map<String, String> pathVars) {
+        this.template = template;
+        this.pathVars = pathVars;
+    }
+}
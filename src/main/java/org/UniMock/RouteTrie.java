@@ -0,0 +1,248 @@
+package org.UniMock;
+
+import java.util.*;
+
+/**
+ * Маршрутизатор шаблонов: отдельное дерево сегментов на каждый HTTP-метод.
+ * Строится один раз при загрузке шаблонов, на горячем пути regex не используется.
+ *
+ * Поддерживаемые сегменты endpoint'а:
+ *   static — точное совпадение сегмента
+ *   :var   — любой один сегмент, значение попадает в path-переменные
+ *   *      — любое количество оставшихся сегментов (в т.ч. ноль)
+ *   a:var.b, a*.b — :var или * внутри сегмента с текстом до и/или после (/users/:id.json, /files/*.json);
+ *            совпадает ровно с одним сегментом, :var — непустая середина, * — любая
+ *
+ * Приоритет детерминирован: static → сегмент с текстом вокруг (длиннее текст — раньше) → :var → *,
+ * с откатом назад, если ветка не привела к шаблону. Больше одного :var или * в сегменте — ошибка загрузки.
+ */
+public class RouteTrie {
+
+    private final Map<String, Node> roots = new HashMap<>();
+    private int nodeCount;
+
+    private static class Node {
+        final int id;           // номер узла в дереве — ключ мемоизации при обходе *
+        final Map<String, Node> statics = new HashMap<>();
+        List<Affix> affixes;    // сегменты вида prefix:var.suffix / prefix*suffix, null — таких нет
+        Node param;
+        Node wildcard;
+        Template template;      // шаблон, заканчивающийся на этом узле
+        String[] paramNames;    // имена :var по порядку захвата
+
+        Node(int id) {
+            this.id = id;
+        }
+    }
+
+    // :var или * с текстом вокруг внутри одного сегмента
+    private static final class Affix {
+        final String prefix;
+        final String suffix;
+        final boolean capture;   // :var — середина попадает в path-переменные, * — нет
+        final Node next;
+
+        Affix(String prefix, String suffix, boolean capture, Node next) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.capture = capture;
+            this.next = next;
+        }
+
+        boolean matches(String seg) {
+            int min = prefix.length() + suffix.length() + (capture ? 1 : 0);
+            return seg.length() >= min && seg.startsWith(prefix) && seg.endsWith(suffix);
+        }
+
+        String middle(String seg) {
+            return seg.substring(prefix.length(), seg.length() - suffix.length());
+        }
+    }
+
+    // Разобранный сегмент endpoint'а: placeholder — 0 (только текст), '*' или ':'
+    private static final class Segment {
+        final String prefix;
+        final String name;       // имя :var
+        final String suffix;
+        final char placeholder;
+
+        Segment(String prefix, String name, String suffix, char placeholder) {
+            this.prefix = prefix;
+            this.name = name;
+            this.suffix = suffix;
+            this.placeholder = placeholder;
+        }
+
+        boolean whole() {
+            return prefix.isEmpty() && suffix.isEmpty();
+        }
+    }
+
+    /** Проверяет endpoint при разборе шаблона, чтобы ошибка пришла вместе с именем файла. */
+    static void validate(String endpoint) {
+        for (String seg : splitPath(endpoint)) parseSegment(seg);
+    }
+
+    private static Segment parseSegment(String seg) {
+        int at = placeholderAt(seg, 0);
+        if (at < 0) return new Segment(seg, null, "", (char) 0);
+        if (seg.charAt(at) == '*') {
+            String suffix = seg.substring(at + 1);
+            checkSingle(seg, suffix);
+            return new Segment(seg.substring(0, at), null, suffix, '*');
+        }
+        int end = at + 1;
+        while (end < seg.length() && isNameChar(seg.charAt(end))) end++;
+        String suffix = seg.substring(end);
+        checkSingle(seg, suffix);
+        return new Segment(seg.substring(0, at), seg.substring(at + 1, end), suffix, ':');
+    }
+
+    private static void checkSingle(String seg, String suffix) {
+        if (placeholderAt(suffix, 0) >= 0) {
+            throw new IllegalArgumentException("endpoint segment '" + seg + "' has more than one :var or *");
+        }
+    }
+
+    // Позиция первого * или :имя в строке, -1 — нет
+    private static int placeholderAt(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '*') return i;
+            if (c == ':' && i + 1 < s.length() && isNameChar(s.charAt(i + 1))) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /** Добавляет шаблон в дерево. Возвращает false, если такой маршрут уже был и он перезаписан. */
+    public boolean add(Template t) {
+        Node node = roots.computeIfAbsent(t.method.toUpperCase(), k -> new Node(nodeCount++));
+        List<String> names = new ArrayList<>();
+        for (String text : splitPath(t.endpoint)) {
+            Segment seg = parseSegment(text);
+            if (seg.placeholder == 0) {
+                node = node.statics.computeIfAbsent(text, k -> new Node(nodeCount++));
+            } else if (!seg.whole()) {
+                node = affix(node, seg);
+                if (seg.placeholder == ':') names.add(seg.name);
+            } else if (seg.placeholder == '*') {
+                if (node.wildcard == null) node.wildcard = new Node(nodeCount++);
+                node = node.wildcard;
+            } else {
+                if (node.param == null) node.param = new Node(nodeCount++);
+                node = node.param;
+                names.add(seg.name);
+            }
+        }
+        boolean fresh = node.template == null;
+        node.template = t;
+        node.paramNames = names.toArray(new String[0]);
+        return fresh;
+    }
+
+    // Узел для сегмента с текстом вокруг; одинаковые prefix/suffix/вид делят узел
+    private Node affix(Node node, Segment seg) {
+        boolean capture = seg.placeholder == ':';
+        if (node.affixes == null) node.affixes = new ArrayList<>();
+        for (Affix a : node.affixes) {
+            if (a.capture == capture && a.prefix.equals(seg.prefix) && a.suffix.equals(seg.suffix)) return a.next;
+        }
+        Affix a = new Affix(seg.prefix, seg.suffix, capture, new Node(nodeCount++));
+        node.affixes.add(a);
+        // более длинный текст вокруг — более точное совпадение, проверяется раньше
+        node.affixes.sort(Comparator.comparingInt((Affix x) -> -(x.prefix.length() + x.suffix.length())));
+        return a.next;
+    }
+
+    /** Ищет шаблон и за один проход собирает path-переменные. null — если ничего не подошло. */
+    public RouteMatch match(String method, String path) {
+        Node root = roots.get(method.toUpperCase());
+        if (root == null) return null;
+        String[] segments = splitPath(path);
+        String[] captured = new String[segments.length];
+        Node found = new Walk(segments, captured).walk(root, 0, 0);
+        if (found == null) return null;
+
+        if (found.paramNames.length == 0) return new RouteMatch(found.template, Map.of());
+        Map<String, String> vars = new HashMap<>(found.paramNames.length * 2);
+        for (int i = 0; i < found.paramNames.length; i++) {
+            vars.put(found.paramNames[i], captured[i]);
+        }
+        return new RouteMatch(found.template, Collections.unmodifiableMap(vars));
+    }
+
+    /**
+     * Один обход дерева. Исход walk(node, idx) не зависит от того, как до него дошли,
+     * поэтому неудачные пары (узел, сегмент) запоминаются: несколько * в маршруте
+     * дают не больше узлов × сегментов² шагов вместо экспоненциального перебора.
+     */
+    private static final class Walk {
+        final String[] segments;
+        final String[] captured;
+        Set<Long> failed;       // создаётся при первом *, маршруты без * его не видят
+
+        Walk(String[] segments, String[] captured) {
+            this.segments = segments;
+            this.captured = captured;
+        }
+
+        Node walk(Node node, int idx, int depth) {
+            if (idx == segments.length) {
+                if (node.template != null) return node;
+                // хвостовой * может совпадать с пустым остатком
+                return node.wildcard != null && node.wildcard.template != null ? node.wildcard : null;
+            }
+            long key = ((long) node.id << 32) | idx;
+            if (failed != null && failed.contains(key)) return null;
+            String seg = segments[idx];
+
+            Node next = node.statics.get(seg);
+            if (next != null) {
+                Node r = walk(next, idx + 1, depth);
+                if (r != null) return r;
+            }
+            if (node.affixes != null) {
+                for (Affix a : node.affixes) {
+                    if (!a.matches(seg)) continue;
+                    if (a.capture) captured[depth] = a.middle(seg);
+                    Node r = walk(a.next, idx + 1, a.capture ? depth + 1 : depth);
+                    if (r != null) return r;
+                }
+            }
+            if (node.param != null) {
+                captured[depth] = seg;
+                Node r = walk(node.param, idx + 1, depth + 1);
+                if (r != null) return r;
+            }
+            if (node.wildcard != null) {
+                if (failed == null) failed = new HashSet<>();
+                // * съедает от одного сегмента и больше; предпочитаем самое короткое совпадение
+                for (int end = idx + 1; end <= segments.length; end++) {
+                    Node r = walk(node.wildcard, end, depth);
+                    if (r != null) return r;
+                }
+            }
+            if (failed != null) failed.add(key);
+            return null;
+        }
+    }
+
+    /** Делит путь на сегменты без regex, пустые сегменты (двойной и завершающий /) отбрасываются. */
+    static String[] splitPath(String path) {
+        if (path == null || path.isEmpty()) return new String[0];
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        int len = path.length();
+        for (int i = 0; i <= len; i++) {
+            if (i == len || path.charAt(i) == '/') {
+                if (i > start) parts.add(path.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return parts.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,177 @@
+package org.UniMock;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Режим bench: мок нагружает сам себя и печатает, какую нагрузку держит текущий набор шаблонов.
+ *
+ * Нагрузка открытая (open-loop): запрос i уходит в момент t0 + i/rps, независимо от того,
+ * ответил ли сервер на предыдущие. Задержка считается от запланированного момента отправки,
+ * а не от фактического, — так очередь на стороне клиента или сервера не прячется
+ * (поправка на coordinated omission). Для сравнения печатается и p99 «от фактической отправки».
+ *
+ * Шаблоны опрашиваются по кругу; :var и * в пути заменяются фиксированными значениями.
+ * Если в полёте уже bench.maxInFlight запросов, очередной не отправляется и считается пропущенным.
+ * Пропущенные и оставшиеся без ответа запросы не выпадают из статистики: они идут в колонки
+ * skipped/failed и в квантили задержки со значением таймаута запроса, иначе перегруженный
+ * сервер выглядел бы быстрее, чем есть.
+ */
+public class SelfBench {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final class Target {
+        final Template template;
+        final HttpRequest request;
+        final LatencyHistogram corrected = new LatencyHistogram();
+        final LatencyHistogram uncorrected = new LatencyHistogram();
+        final LongAdder sent = new LongAdder();
+        final LongAdder ok = new LongAdder();
+        final LongAdder non2xx = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+
+        Target(Template template, HttpRequest request) {
+            this.template = template;
+            this.request = request;
+        }
+    }
+
+    public static void run() {
+        List<Target> targets = new ArrayList<>();
+        for (Template t : AppLogic.templates()) {
+            targets.add(new Target(t, requestFor(t)));
+        }
+        if (targets.isEmpty()) {
+            System.out.println("⚠️ Bench: no templates loaded, nothing to measure");
+            return;
+        }
+        targets.sort(Comparator.comparing((Target x) -> x.template.endpoint).thenComparing(x -> x.template.method));
+
+        double rps = AppLogic.BENCH_RPS;
+        double periodNanos = 1e9 / rps;
+        long warmupNanos = TimeUnit.SECONDS.toNanos(AppLogic.BENCH_WARMUP_SECONDS);
+        long durationNanos = TimeUnit.SECONDS.toNanos(AppLogic.BENCH_DURATION_SECONDS);
+        System.out.println("📈 Bench: " + targets.size() + " templates, " + rps + " rps, "
+                + AppLogic.BENCH_WARMUP_SECONDS + "s warmup + " + AppLogic.BENCH_DURATION_SECONDS + "s, thread.max="
+                + AppLogic.THREAD_MAX);
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();   // после него ответы уже не учитываются
+
+        long t0 = System.nanoTime();
+        long measureFrom = t0 + warmupNanos;
+        long end = measureFrom + durationNanos;
+        for (long i = 0; ; i++) {
+            long intended = t0 + (long) (i * periodNanos);
+            if (intended >= end) break;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+
+            Target target = targets.get((int) (i % targets.size()));
+            boolean measured = intended >= measureFrom;
+            if (inFlight.get() >= AppLogic.BENCH_MAX_IN_FLIGHT) {
+                if (measured) {
+                    target.skipped.increment();
+                    target.corrected.recordNanos(REQUEST_TIMEOUT.toNanos());   // ответа не будет — как по таймауту
+                }
+                continue;
+            }
+            inFlight.incrementAndGet();
+            if (measured) target.sent.increment();
+            long sent = System.nanoTime();
+            client.sendAsync(target.request, HttpResponse.BodyHandlers.discarding()).whenComplete((resp, err) -> {
+                long done = System.nanoTime();
+                inFlight.decrementAndGet();
+                if (!measured || closed.get()) return;
+                if (err != null) {
+                    target.failed.increment();
+                    target.corrected.recordNanos(done - intended);
+                    return;
+                }
+                target.corrected.recordNanos(done - intended);
+                target.uncorrected.recordNanos(done - sent);
+                if (resp.statusCode() < 300) target.ok.increment(); else target.non2xx.increment();
+            });
+        }
+
+        // Дожидаемся ответов на уже отправленное (с запасом на самые долгие Response time)
+        long graceUntil = System.nanoTime() + REQUEST_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < graceUntil) LockSupport.parkNanos(10_000_000L);
+        closed.set(true);
+        for (Target x : targets) {
+            // отправленные без ответа — ошибки с задержкой не меньше таймаута
+            long pending = x.sent.sum() - x.ok.sum() - x.non2xx.sum() - x.failed.sum();
+            for (long k = 0; k < pending; k++) {
+                x.failed.increment();
+                x.corrected.recordNanos(REQUEST_TIMEOUT.toNanos());
+            }
+        }
+        if (inFlight.get() > 0) System.out.println("⚠️ Bench: " + inFlight.get() + " requests still in flight, counted as failed");
+
+        report(targets, rps, AppLogic.BENCH_DURATION_SECONDS);
+    }
+
+    private static HttpRequest requestFor(Template t) {
+        StringBuilder path = new StringBuilder();
+        for (String seg : RouteTrie.splitPath(t.endpoint)) {
+            path.append('/');
+            if (seg.startsWith(":")) path.append('1');
+            else if (seg.equals("*")) path.append('x');
+            else path.append(seg);
+        }
+        if (path.length() == 0) path.append('/');
+
+        String method = t.method.toUpperCase(Locale.ROOT);
+        boolean hasBody = method.equals("POST") || method.equals("PUT") || method.equals("PATCH");
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + AppLogic.PORT + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .method(method, hasBody ? HttpRequest.BodyPublishers.ofString("{}") : HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    private static void report(List<Target> targets, double rps, long seconds) {
+        System.out.println(String.format("%-7s %-32s %9s %8s %8s %8s %9s %9s %9s %9s %9s",
+                "METHOD", "ENDPOINT", "rps", "non2xx", "failed", "skipped",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "p99* ms"));
+
+        long total = 0, lost = 0;
+        for (Target x : targets) {
+            long done = x.ok.sum() + x.non2xx.sum();
+            total += done;
+            lost += x.failed.sum() + x.skipped.sum();
+            StringBuilder line = new StringBuilder(String.format("%-7s %-32s %9.1f %8d %8d %8d",
+                    x.template.method, x.template.endpoint, done / (double) seconds,
+                    x.non2xx.sum(), x.failed.sum(), x.skipped.sum()));
+            for (double q : QUANTILES) line.append(String.format(" %9.2f", x.corrected.quantileNanos(q) / 1e6));
+            line.append(String.format(" %9.2f", x.uncorrected.quantileNanos(0.99) / 1e6));
+            System.out.println(line);
+        }
+        System.out.println("(p50..p99.9 include skipped and unanswered requests at the " + REQUEST_TIMEOUT.toSeconds()
+                + "s timeout; p99* — answered requests only, measured from the actual send)");
+
+        double achieved = total / (double) seconds;
+        boolean sustained = lost == 0 && achieved >= rps * 0.99;
+        System.out.println((sustained ? "✅" : "⚠️") + String.format(" Bench: %.1f of %.1f rps completed, %d failed or skipped — %s",
+                achieved, rps, lost, sustained ? "sustained" : "NOT sustained"));
+    }
+}
@@ -1,19 +1,24 @@
 package org.UniMock;
 import static spark.Spark.*;
 
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
 import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
-import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
 
-import java.util.HashMap;
-import java.util.Map;
 
 
 //TIP To <b>Run</b> code, press <shortcut actionId="Run"/> or
 // click the <icon src="AllIcons.Actions.Execute"/> icon in the gutter.
 public class SparkAppMain {
     private static final org. slf4j.Logger logger = LoggerFactory.getLogger(SparkAppMain.class);
+    static final String ADMIN_METRICS = "/__admin/metrics";
     public static void main(String[] args) {
         if (!org.slf4j.LoggerFactory.getILoggerFactory().getClass().getName().contains("ch.qos.logback")) {
             System.err.println("⚠️ Logback not active! Check dependencies and logback.xml");
@@ -23,11 +28,17 @@ public class SparkAppMain {
         logger.info(pl);
 
 
+        // Своя фабрика Jetty: задержки ответов обслуживаются асинхронно, без занятого потока
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new MockServerFactory());
         port(AppLogic.PORT);
         threadPool(AppLogic.THREAD_MAX, AppLogic.THREAD_MIN, AppLogic.THREAD_IDLE_TIMEOUT);
-        Spark.before(((request, response) -> {
-            logger.info("Request: " + request.requestMethod() + " " +request.pathInfo() +" " + request.params());
-        }));
+        // Журнал запросов пишется в handleAll через AccessLog (accessLog.enabled), не синхронным фильтром
+
+        // Служебные маршруты регистрируются раньше catch-all: Spark берёт первый подходящий
+        get(ADMIN_METRICS, (req, res) -> {
+            res.type("text/plain; version=0.0.4; charset=utf-8");
+            return Metrics.render();
+        });
 
         get("/", SparkAppMain::handleAll);
         get("/*", SparkAppMain::handleAll);
@@ -45,44 +56,106 @@ public class SparkAppMain {
         options("/*", SparkAppMain::handleAll);
 
         System.out.println("🚀 SparkApp is running on port " + AppLogic.PORT);
+
+        // java -jar unimock.jar bench — нагрузить самого себя, напечатать отчёт и выйти
+        if (java.util.Arrays.asList(args).contains("bench")) {
+            awaitInitialization();
+            SelfBench.run();
+            stop();
+            awaitStop();
+            System.exit(0);
+        }
     }
 
 
 
     private static Object handleAll(Request req, Response res) {
+        long start = System.nanoTime();
         try {
             String method = req.requestMethod();
             String endpoint = req.uri();
-            String body = req.body() != null ? req.body() : "";
-
-            Map<String, String> reqVars = new HashMap<>();
-            reqVars.put("body", body);
-
-            // query-параметры
-            Map<String, String> reqVarsParams = new HashMap<>();
-            for (String qp : req.queryParams()) {
-                reqVarsParams.put(qp, req.queryParams(qp));
+            // Заголовки, параметры и тело читаются лениво — только те, что нужны шаблону
+            ResponseData rd = AppLogic.buildResponse(method, endpoint, new SparkInput(req));
+            // Слот Limits сразу переходит запросу: его вернёт отправка ответа или catch ниже
+            if (rd.limiter != null) {
+                req.raw().setAttribute(EndpointLimiter.LIMITER_ATTR, rd.limiter);
             }
 
-            // заголовки
-            Map<String, String> reqVarsHeaders = new HashMap<>();
-            for (String h : req.headers()) {
-                reqVarsHeaders.put(h, req.headers(h));
+            if (rd.delayMs > 0) {
+                req.raw().setAttribute(DelayedResponseHandler.DEADLINE_ATTR, System.nanoTime() + rd.delayMs * 1_000_000L);
+                req.raw().setAttribute(DelayedResponseHandler.METRICS_ATTR, rd.metrics);
             }
 
-            // path-переменные (если эндпоинт в шаблоне содержит :var)
-            Map<String, String> reqPathVars = AppLogic.extractPathVars(method, endpoint);
+            res.status(rd.status);
+            res.type(rd.contentType != null ? rd.contentType : "application/json; charset=utf-8");
+            writeHeaders(req, res, rd);
+            AccessLog.record(method, endpoint, rd.status, System.nanoTime() - start, rd.delayMs);
+
+            // Сбой соединения (Faults): тело уйдёт в DelayedResponseHandler как есть, без gzip и файла
+            if (rd.fault != null) {
+                req.raw().setAttribute(DelayedResponseHandler.FAULT_ATTR, rd.fault);
+                return rd.body;
+            }
 
-            ResponseData rd = AppLogic.buildResponse(method, endpoint, reqVars, reqVarsHeaders, reqVarsParams, reqPathVars);
+            // Тело из файла (Body file) отдаёт DelayedResponseHandler прямо из mmap
+            if (rd.file != null) {
+                if (rd.file.contentType != null) res.type(rd.file.contentType);
+                req.raw().setAttribute(DelayedResponseHandler.FILE_ATTR, rd.file);
+                return "";
+            }
 
-            res.status(rd.status);
-            res.type("application/json; charset=utf-8");
-            rd.headers.forEach(res::header);
+            // Заранее сжатое тело (статический шаблон с response.preGzip)
+            if (rd.gzipBody != null) {
+                res.header("Vary", "Accept-Encoding");
+                String accept = req.headers("Accept-Encoding");
+                if (accept != null && accept.contains("gzip")) {
+                    req.raw().setAttribute(DelayedResponseHandler.GZIP_ATTR, Boolean.TRUE);
+                    res.header("Content-Encoding", "gzip");
+                    return rd.gzipBody;
+                }
+            }
             return rd.body;
 
         } catch (Exception e) {
+            EndpointLimiter.releaseFor(req.raw());
             res.status(500);
+            AccessLog.record(req.requestMethod(), req.uri(), 500, System.nanoTime() - start, 0);
             return "{\"error\":\"internal server error\"}";
         }
     }
-}
\ No newline at end of file
+
+    // Заголовки шаблона пишутся прямо в ответ: fixed — готовыми байтами в поля Jetty, без Map на запрос
+    private static void writeHeaders(Request req, Response res, ResponseData rd) {
+        if (rd.preEncodedHeaders != null && rd.preEncodedHeaders.length > 0) {
+            HttpFields fields = org.eclipse.jetty.server.Request.getBaseRequest(req.raw()).getResponse().getHttpFields();
+            for (HttpField f : rd.preEncodedHeaders) fields.add(f);
+        }
+        if (rd.generatedValues != null) {
+            HttpServletResponse raw = res.raw();
+            for (int i = 0; i < rd.generatedValues.length; i++) {
+                raw.setHeader(rd.generatedHeaders[i].name, rd.generatedValues[i]);
+            }
+        }
+        rd.headers.forEach(res::header);
+    }
+
+    /**
+     * Данные запроса Spark без копирования: servlet-API сам ищет заголовки без учёта регистра.
+     * bodyStream() читает из запроса Jetty в обход обёртки Spark, которая копит тело в byte[].
+     */
+    private static final class SparkInput implements RequestInput {
+        private final Request req;
+
+        SparkInput(Request req) {
+            this.req = req;
+        }
+
+        @Override public String body() { return req.body(); }
+        @Override public long bodyLength() { return req.raw().getContentLengthLong(); }
+        @Override public InputStream bodyStream() throws IOException {
+            return org.eclipse.jetty.server.Request.getBaseRequest(req.raw()).getInputStream();
+        }
+        @Override public String header(String name) { return req.headers(name); }
+        @Override public String param(String name) { return req.queryParams(name); }
+    }
+}
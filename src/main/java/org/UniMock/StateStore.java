@@ -0,0 +1,264 @@
+package org.UniMock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Общее состояние сценариев: шаблоны пишут в него значения (секция "State")
+ * и читают их в других шаблонах (переменная stateGet).
+ *
+ *   POST /orders                 GET /orders/:id
+ *   Vars:                        Vars:
+ *   id: randomNum; 1-999999      id: reqPath; id
+ *   State:                       order: stateGet; order:$id$
+ *   put order:$id$ = $body$      State:
+ *                                require order:$id$ 404
+ *
+ * Хранилище ограничено: не больше state.maxEntries записей и state.ttlSeconds жизни каждой.
+ * Чтение — ConcurrentHashMap без блокировок. Порядок записи хранится в lock-free очереди:
+ * в её голове самые старые записи, они первыми и истекают, и вытесняются при переполнении,
+ * так что очистка идёт по ходу put без отдельного потока. Узлы перезаписанных и удалённых
+ * ключей, пока очередь длиннее 4 × max(maxEntries, 1024), вычищаются понемногу — не больше
+ * SWEEP_STEP узлов за один put, чтобы ни один запрос не платил за обход всей очереди.
+ * Порядок живых записей при этом не меняется.
+ */
+public class StateStore {
+
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private static final ConcurrentLinkedQueue<Entry> writeOrder = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger queued = new AtomicInteger();
+    private static final AtomicBoolean sweeping = new AtomicBoolean();
+    private static final int SWEEP_STEP = 64;
+    private static Iterator<Entry> sweepCursor;   // только под флагом sweeping
+    private static final LongAdder evictions = new LongAdder();
+    private static final LongAdder expirations = new LongAdder();
+
+    private static final class Entry {
+        final String key;
+        final String value;
+        final long expiresAt;
+
+        Entry(String key, String value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /** @return значение или null, если ключа нет или он истёк */
+    public static String get(String key) {
+        Entry e = entries.get(key);
+        if (e == null) return null;
+        if (e.expiresAt <= System.currentTimeMillis()) {
+            if (entries.remove(key, e)) expirations.increment();
+            return null;
+        }
+        return e.value;
+    }
+
+    public static void put(String key, String value) {
+        long now = System.currentTimeMillis();
+        long ttl = AppLogic.STATE_TTL_SECONDS;
+        Entry e = new Entry(key, value, ttl > 0 ? now + ttl * 1000 : Long.MAX_VALUE);
+        entries.put(key, e);
+        writeOrder.offer(e);
+        queued.incrementAndGet();
+        trim(now);
+    }
+
+    public static void remove(String key) {
+        entries.remove(key);   // запись в очереди станет «мёртвой» и уйдёт при очистке
+    }
+
+    public static int size() {
+        return entries.size();
+    }
+
+    public static long evictionCount() { return evictions.sum(); }
+    public static long expiredCount() { return expirations.sum(); }
+
+    // Снимает с головы очереди истёкшие, вытесняемые и перезаписанные записи
+    private static void trim(long now) {
+        int max = AppLogic.STATE_MAX_ENTRIES;
+        while (true) {
+            Entry head = writeOrder.peek();
+            if (head == null) return;
+            boolean live = entries.get(head.key) == head;
+            boolean expired = head.expiresAt <= now;
+            boolean overflow = entries.size() > max;
+            if (live && !expired && !overflow) break;
+
+            if (!writeOrder.remove(head)) continue;   // её уже снял другой поток
+            queued.decrementAndGet();
+            if (live && entries.remove(head.key, head)) (expired ? expirations : evictions).increment();
+        }
+        // перезаписи одного ключа копят мёртвые узлы за живой головой — не даём очереди расти
+        if (queued.get() > 4 * Math.max(max, 1024)) sweepDead();
+    }
+
+    // Следующие SWEEP_STEP узлов очереди: удаляет те, что уже не записи entries. Живые остаются на местах,
+    // курсор переживает вызовы, дойдя до конца — начинает сначала
+    private static void sweepDead() {
+        if (!sweeping.compareAndSet(false, true)) return;   // чистит уже другой поток
+        try {
+            Iterator<Entry> it = sweepCursor != null ? sweepCursor : writeOrder.iterator();
+            for (int i = 0; i < SWEEP_STEP && it.hasNext(); i++) {
+                Entry e = it.next();
+                if (entries.get(e.key) != e) {
+                    it.remove();
+                    queued.decrementAndGet();
+                }
+            }
+            sweepCursor = it.hasNext() ? it : null;
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    // ---------------------------------------------------------------- шаблоны
+
+    /** Ключ вида order:$id$ — каждое $name$ подставляется из переменных запроса (нет — пусто). */
+    public static final class Key {
+        private final String[] literals;   // literals.length == names.length + 1
+        private final String[] names;
+
+        private Key(String[] literals, String[] names) {
+            this.literals = literals;
+            this.names = names;
+        }
+
+        public static Key parse(String text) {
+            if (text == null || text.trim().isEmpty()) throw new IllegalArgumentException("State key is empty");
+            List<String> literals = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            String s = text.trim();
+            int i = 0;
+            while (true) {
+                int open = s.indexOf('$', i);
+                int close = open < 0 ? -1 : s.indexOf('$', open + 1);
+                if (close < 0) {
+                    literals.add(s.substring(i));
+                    break;
+                }
+                literals.add(s.substring(i, open));
+                names.add(s.substring(open + 1, close));
+                i = close + 1;
+            }
+            return new Key(literals.toArray(new String[0]), names.toArray(new String[0]));
+        }
+
+        public String render(Map<String, String> vars) {
+            if (names.length == 0) return literals[0];
+            StringBuilder sb = new StringBuilder(32);
+            for (int i = 0; i < names.length; i++) {
+                sb.append(literals[i]);
+                String v = vars.get(names[i]);
+                if (v != null) sb.append(v);
+            }
+            return sb.append(literals[names.length]).toString();
+        }
+
+        public boolean uses(String name) {
+            for (String n : names) {
+                if (n.equals(name)) return true;
+            }
+            return false;
+        }
+    }
+
+    /** Строка секции State, разобранная при загрузке шаблона. */
+    public static final class Op {
+        enum Kind { PUT, DELETE, REQUIRE }
+
+        final Kind kind;
+        final Key key;
+        final CompiledBody value;   // PUT
+        final int status;           // REQUIRE: ответ, если ключа нет
+
+        private Op(Kind kind, Key key, CompiledBody value, int status) {
+            this.kind = kind;
+            this.key = key;
+            this.value = value;
+            this.status = status;
+        }
+
+        boolean uses(String name) {
+            return key.uses(name) || (value != null && value.uses(name));
+        }
+    }
+
+    /**
+     * Разбирает секцию State:
+     *   put KEY = VALUE      — записать (VALUE с $var$, как тело ответа); только для успешного ответа
+     *   delete KEY           — удалить; только для успешного ответа
+     *   require KEY [STATUS] — если ключа нет, ответить STATUS (по умолчанию 404)
+     */
+    public static List<Op> compile(List<String> lines, Set<String> varNames) {
+        List<Op> ops = new ArrayList<>();
+        for (String line : lines) {
+            String[] p = line.trim().split("\\s+", 2);
+            if (p.length < 2) throw new IllegalArgumentException("State: expected 'put|delete|require KEY', got: " + line);
+            switch (p[0]) {
+                case "put": {
+                    int eq = p[1].indexOf('=');
+                    if (eq < 0) throw new IllegalArgumentException("State: expected 'put KEY = VALUE', got: " + line);
+                    ops.add(new Op(Op.Kind.PUT, Key.parse(p[1].substring(0, eq)),
+                            CompiledBody.compile(p[1].substring(eq + 1).trim(), varNames), 0));
+                    break;
+                }
+                case "delete":
+                    ops.add(new Op(Op.Kind.DELETE, Key.parse(p[1]), null, 0));
+                    break;
+                case "require": {
+                    String[] r = p[1].trim().split("\\s+");
+                    int status = r.length > 1 ? Integer.parseInt(r[1]) : 404;
+                    ops.add(new Op(Op.Kind.REQUIRE, Key.parse(r[0]), null, status));
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("State: unknown operation '" + p[0] + "'");
+            }
+        }
+        return ops;
+    }
+
+    /** Читают ли операции переменную (например, $body$). */
+    public static boolean uses(List<Op> ops, String name) {
+        for (Op op : ops) {
+            if (op.uses(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Выполняет операции запроса по порядку.
+     * @return статус для ответа "не найдено" (первый не выполненный require) или 0
+     */
+    public static int apply(List<Op> ops, Map<String, String> vars, boolean isError) {
+        for (Op op : ops) {
+            if (op.kind == Op.Kind.REQUIRE && get(op.key.render(vars)) == null) return op.status;
+        }
+        if (isError) return 0;   // бэкенд «упал» — ничего не сохранил
+        for (Op op : ops) {
+            switch (op.kind) {
+                case PUT:
+                    put(op.key.render(vars), op.value.renderText(vars));
+                    break;
+                case DELETE:
+                    remove(op.key.render(vars));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,354 @@
+package org.UniMock;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Потоковое извлечение значений jsonParse/xmlParse без построения дерева/DOM.
+ *
+ * Набор путей собирается при загрузке шаблона. На запросе тело читается один раз
+ * токенами (Jackson JsonParser / StAX) и чтение прекращается, как только найдены
+ * все нужные значения. Память на запрос — порядка размера извлечённых значений.
+ *
+ * JSON: поддерживаются все пути jsonParse. XML: только простые абсолютные пути
+ * вида /a/b/c, /a/b/@attr, /a/b/text(); если в шаблоне есть XPath сложнее,
+ * XML этого шаблона разбирается в DOM, как и раньше.
+ *
+ * Потоковый режим включается для тел не короче AppLogic.STREAMING_THRESHOLD байт
+ * (по Content-Length; chunked-тело неизвестной длины — всегда потоково), мелкие тела дешевле
+ * разобрать целиком. Тело читается прямо из InputStream запроса и в String не собирается,
+ * поэтому поток возможен, только если тело больше ничему не нужно (см. singlePass и Template.bodyText).
+ */
+public class StreamingExtractor {
+
+    private static final JsonFactory JSON_FACTORY = RequestContext.MAPPER.getFactory();
+    private static final XMLInputFactory XML_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        // как и у DocumentBuilderFactory в RequestContext: без пространств имён
+        XML_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        XML_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+        XML_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    private final List<JsonPath> jsonPaths;
+    private final List<XmlPath> xmlPaths;
+    private final boolean xmlStreamable;
+
+    private StreamingExtractor(List<JsonPath> jsonPaths, List<XmlPath> xmlPaths, boolean xmlStreamable) {
+        this.jsonPaths = jsonPaths;
+        this.xmlPaths = xmlPaths;
+        this.xmlStreamable = xmlStreamable;
+    }
+
+    /** Строит план для переменных шаблона. null — если в шаблоне нет jsonParse/xmlParse. */
+    public static StreamingExtractor forVars(Collection<VarDef> vars) {
+        Map<String, JsonPath> json = new LinkedHashMap<>();
+        Map<String, XmlPath> xml = new LinkedHashMap<>();
+        boolean xmlStreamable = true;
+        for (VarDef v : vars) {
+            if ("jsonParse".equals(v.type)) {
+                JsonPointer ptr = VarsGenerator.jsonPointer(v.condition);
+                json.putIfAbsent(ptr.toString(), new JsonPath(ptr));
+            } else if ("xmlParse".equals(v.type)) {
+                String expr = v.condition.trim();
+                XmlPath path = XmlPath.parse(expr);
+                if (path == null) xmlStreamable = false;
+                else xml.putIfAbsent(expr, path);
+            }
+        }
+        if (json.isEmpty() && xml.isEmpty() && xmlStreamable) return null;
+        return new StreamingExtractor(new ArrayList<>(json.values()), new ArrayList<>(xml.values()), xmlStreamable);
+    }
+
+    /**
+     * Все переменные тела вычисляются одним потоковым проходом: только jsonParse или только
+     * xmlParse с простыми путями. Иначе тело нужно целиком (DOM или два формата сразу).
+     */
+    public boolean singlePass() {
+        return xmlStreamable && jsonPaths.isEmpty() != xmlPaths.isEmpty();
+    }
+
+    public boolean hasJson() {
+        return !jsonPaths.isEmpty();
+    }
+
+    public boolean hasXml() {
+        return xmlStreamable && !xmlPaths.isEmpty();
+    }
+
+    /** @param length длина тела в байтах, -1 — неизвестна */
+    public static boolean isLarge(long length) {
+        return AppLogic.STREAMING_THRESHOLD >= 0 && (length < 0 || length >= AppLogic.STREAMING_THRESHOLD);
+    }
+
+    // ---------------------------------------------------------------- JSON
+
+    /**
+     * @return значения по строковому виду JsonPointer; ненайденных путей в карте нет.
+     * Невалидный JSON — то, что успели найти до ошибки.
+     */
+    public Map<String, String> extractJson(Reader in) {
+        try {
+            return extractJson(JSON_FACTORY.createParser(in));
+        } catch (Exception e) {
+            return new HashMap<>();
+        }
+    }
+
+    /** То же из байтов тела; кодировку (UTF-8/16/32) Jackson определяет сам. */
+    public Map<String, String> extractJson(InputStream in) {
+        try {
+            return extractJson(JSON_FACTORY.createParser(in));
+        } catch (Exception e) {
+            return new HashMap<>();
+        }
+    }
+
+    private Map<String, String> extractJson(JsonParser parser) {
+        Map<String, String> out = new HashMap<>(jsonPaths.size() * 2);
+        try (JsonParser p = parser) {
+            if (p.nextToken() != null) {
+                String[] names = new String[16];
+                int[] indexes = new int[16];
+                readJson(p, names, indexes, 0, out);
+            }
+        } catch (Exception ignored) {
+            // тело не JSON или обрезано — ведём себя как MissingNode для оставшихся путей
+        }
+        return out;
+    }
+
+    /** @return true, когда найдены все пути и чтение можно прекращать */
+    private boolean readJson(JsonParser p, String[] names, int[] indexes, int depth,
+                             Map<String, String> out) throws Exception {
+        JsonToken token = p.currentToken();
+        boolean container = token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY;
+
+        for (JsonPath path : jsonPaths) {
+            if (path.names.length == depth && path.isPrefix(names, indexes, depth) && !out.containsKey(path.key)) {
+                out.put(path.key, container ? "" : scalarText(p));   // asText() контейнера — пустая строка
+                if (out.size() == jsonPaths.size()) return true;
+            }
+        }
+        if (!container) return false;
+
+        if (!anyBelow(names, indexes, depth)) {
+            p.skipChildren();
+            return false;
+        }
+        if (depth == names.length) {
+            names = Arrays.copyOf(names, depth * 2);
+            indexes = Arrays.copyOf(indexes, depth * 2);
+        }
+
+        if (token == JsonToken.START_OBJECT) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                names[depth] = p.currentName();
+                indexes[depth] = -1;
+                p.nextToken();
+                if (readJson(p, names, indexes, depth + 1, out)) return true;
+            }
+        } else {
+            int i = 0;
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                names[depth] = null;
+                indexes[depth] = i++;
+                if (readJson(p, names, indexes, depth + 1, out)) return true;
+            }
+        }
+        return false;
+    }
+
+    // Как JsonNode.asText() в разборе деревом: 1.50e0 → 1.5, 007 в строке — как есть
+    private static String scalarText(JsonParser p) throws Exception {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return RequestContext.MAPPER.<JsonNode>readTree(p).asText();   // скаляр: парсер остаётся на том же токене
+        }
+        return p.getText();
+    }
+
+    private boolean anyBelow(String[] names, int[] indexes, int depth) {
+        for (JsonPath path : jsonPaths) {
+            if (path.names.length > depth && path.isPrefix(names, indexes, depth)) return true;
+        }
+        return false;
+    }
+
+    private static class JsonPath {
+        final String key;
+        final String[] names;
+        final int[] indexes;   // -1, если сегмент не число
+
+        JsonPath(JsonPointer ptr) {
+            key = ptr.toString();
+            List<String> n = new ArrayList<>();
+            List<Integer> idx = new ArrayList<>();
+            for (JsonPointer p = ptr; !p.matches(); p = p.tail()) {
+                n.add(p.getMatchingProperty());
+                idx.add(p.getMatchingIndex());
+            }
+            names = n.toArray(new String[0]);
+            indexes = idx.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /** Совпадают ли первые depth сегментов пути с текущей позицией парсера. */
+        boolean isPrefix(String[] curNames, int[] curIndexes, int depth) {
+            if (depth > names.length) return false;
+            for (int i = 0; i < depth; i++) {
+                if (curNames[i] != null) {
+                    if (!curNames[i].equals(names[i])) return false;
+                } else if (curIndexes[i] != indexes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------- XML
+
+    /**
+     * @return значения по исходному XPath-выражению; ненайденных путей в карте нет.
+     * Ошибка разбора пробрасывается — так же, как ошибка DOM-разбора.
+     */
+    public Map<String, String> extractXml(Reader in) throws Exception {
+        return extractXml(XML_FACTORY.createXMLStreamReader(in));
+    }
+
+    /** То же из байтов тела; кодировку берёт из пролога XML. Пустое тело — пустой результат, как у DOM-пути. */
+    public Map<String, String> extractXml(InputStream in) throws Exception {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(1);
+        if (buffered.read() < 0) return new HashMap<>();
+        buffered.reset();
+        return extractXml(XML_FACTORY.createXMLStreamReader(buffered));
+    }
+
+    private Map<String, String> extractXml(XMLStreamReader r) throws Exception {
+        Map<String, String> out = new HashMap<>(xmlPaths.size() * 2);
+        try {
+            List<String> stack = new ArrayList<>();
+            // активные захваты строкового значения элемента: путь → накопленный текст
+            Map<XmlPath, StringBuilder> capturing = new HashMap<>();
+            while (r.hasNext() && out.size() < xmlPaths.size()) {
+                switch (r.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        stack.add(r.getLocalName());
+                        for (XmlPath path : xmlPaths) {
+                            if (out.containsKey(path.expr) || capturing.containsKey(path) || !path.matchesElement(stack)) continue;
+                            if (path.attribute != null) {
+                                String val = attribute(r, path.attribute);
+                                if (val != null) out.put(path.expr, val);
+                            } else {
+                                capturing.put(path, new StringBuilder());
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        for (Map.Entry<XmlPath, StringBuilder> c : capturing.entrySet()) {
+                            XmlPath path = c.getKey();
+                            // text() — только первый собственный текстовый узел, а не текст потомков
+                            if (path.textOnly && stack.size() != path.steps.length) continue;
+                            c.getValue().append(r.getText());
+                            if (path.textOnly) out.put(path.expr, c.getValue().toString());
+                        }
+                        capturing.keySet().removeIf(p -> p.textOnly && out.containsKey(p.expr));
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        Iterator<Map.Entry<XmlPath, StringBuilder>> it = capturing.entrySet().iterator();
+                        while (it.hasNext()) {
+                            Map.Entry<XmlPath, StringBuilder> c = it.next();
+                            if (c.getKey().steps.length == stack.size()) {
+                                if (!c.getKey().textOnly) out.put(c.getKey().expr, c.getValue().toString());
+                                it.remove();
+                            }
+                        }
+                        stack.remove(stack.size() - 1);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            r.close();
+        }
+        return out;
+    }
+
+    private static String attribute(XMLStreamReader r, String name) {
+        for (int i = 0; i < r.getAttributeCount(); i++) {
+            if (name.equals(r.getAttributeLocalName(i))) return r.getAttributeValue(i);
+        }
+        return null;
+    }
+
+    private static class XmlPath {
+        final String expr;
+        final String[] steps;
+        final String attribute;   // /a/b/@attr
+        final boolean textOnly;   // /a/b/text()
+
+        private XmlPath(String expr, String[] steps, String attribute, boolean textOnly) {
+            this.expr = expr;
+            this.steps = steps;
+            this.attribute = attribute;
+            this.textOnly = textOnly;
+        }
+
+        /** Разбирает простой абсолютный путь. null — выражение потоково не вычисляется. */
+        static XmlPath parse(String expr) {
+            if (!expr.startsWith("/") || expr.startsWith("//")) return null;
+            String[] parts = expr.substring(1).split("/", -1);
+            String attribute = null;
+            boolean textOnly = false;
+            int n = parts.length;
+            String last = parts[n - 1];
+            if (last.startsWith("@")) {
+                attribute = last.substring(1);
+                if (!isName(attribute)) return null;
+                n--;
+            } else if (last.equals("text()")) {
+                textOnly = true;
+                n--;
+            }
+            if (n == 0) return null;
+            String[] steps = Arrays.copyOf(parts, n);
+            for (String s : steps) {
+                if (!isName(s)) return null;
+            }
+            return new XmlPath(expr, steps, attribute, textOnly);
+        }
+
+        boolean matchesElement(List<String> stack) {
+            if (stack.size() != steps.length) return false;
+            for (int i = 0; i < steps.length; i++) {
+                if (!steps[i].equals(stack.get(i))) return false;
+            }
+            return true;
+        }
+
+        // Имя без осей, предикатов, функций и подстановок
+        private static boolean isName(String s) {
+            if (s.isEmpty()) return false;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.')) return false;
+            }
+            return Character.isLetter(s.charAt(0)) || s.charAt(0) == '_';
+        }
+    }
+}
@@ -1,27 +1,46 @@
 package org.UniMock;
+import org.eclipse.jetty.http.HttpField;
+
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Template {
     public String method;
     public String endpoint;
-    public Map<String, VarDef> bodyVars = new HashMap<>();
-    public Map<String, HeaderDef> headers = new HashMap<>();
+    public Map<String, VarDef> bodyVars = new LinkedHashMap<>();   // порядок файла: stateGet ссылается на переменные выше
+    public Map<String, HeaderDef> headers = new LinkedHashMap<>();
+    public String contentType;              // fixed Content-Type из Additional Headers, null — application/json
+    public HttpField[] preEncodedHeaders = new HttpField[0];   // fixed-заголовки, закодированы при загрузке
+    public HeaderDef[] generatedHeaders = new HeaderDef[0];   // остальные — генерируются на запрос
     public int errorPercent = 0;
     public int errorStatus = 500;
     public String errorBody = null;
     public String successBody = "";
-    public long responseTimeMs = -1;
+    public LatencyProfile responseTime;     // null — без задержки
+    public EndpointLimiter limiter;         // null — без секции Limits
+    public List<StateStore.Op> state;       // null — шаблон не работает с общим состоянием
+    public FileBody bodyFile;               // не null — успешный ответ отдаётся из файла
+    public FaultInjector faults;            // null — без секции Faults
+    public PreEncodedBody staticSuccess;    // не null — шаблон статический, тела закодированы при загрузке
+    public PreEncodedBody staticError;
+    public Set<RequestInput.Part> inputs = EnumSet.noneOf(RequestInput.Part.class);   // что читать из запроса
+    public CompiledBody successCompiled;
+    public CompiledBody errorCompiled;
+    public StreamingExtractor streaming;   // null — в шаблоне нет jsonParse/xmlParse
+    public boolean bodyText;               // тело нужно строкой целиком: $body$, regexParse, DOM — без потокового разбора
+    public Long randomSeed = null;         // null — обычная (невоспроизводимая) случайность
+    public final AtomicLong requestCounter = new AtomicLong();
+    public Metrics.TemplateMetrics metrics;
 }
 
 class VarDef {
     public String name;
     public String type;
     public String condition;
+    public CompiledVar compiled;
 }
 
-class HeaderDef {
-    public String name;
-    public String type;
-    public String condition;
+/** Заголовок ответа: те же типы и генераторы, что у переменной из Vars. */
+class HeaderDef extends VarDef {
 }
 
@@ -0,0 +1,49 @@
+package org.UniMock;
+
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Неизменяемый срез загруженных шаблонов: файлы, дерево маршрутов и свой кэш соответствий.
+ * При перезагрузке строится новый срез и подменяется одной volatile-записью,
+ * поэтому запрос, начавшийся на старом срезе, дорабатывает на нём целиком,
+ * а кэш endpoint'ов нового среза заведомо пуст.
+ */
+public class TemplateSnapshot {
+
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(TemplateSnapshot.class);
+
+    public final Map<Path, Template> byFile;     // файл → шаблон
+    public final Map<String, Template> byKey;    // "METHOD endpoint" → шаблон
+    public final RouteTrie routes;
+    public final EndpointCache<RouteMatch> endpointCache;
+
+    private TemplateSnapshot(Map<Path, Template> byFile, Map<String, Template> byKey,
+                             RouteTrie routes, EndpointCache<RouteMatch> endpointCache) {
+        this.byFile = byFile;
+        this.byKey = byKey;
+        this.routes = routes;
+        this.endpointCache = endpointCache;
+    }
+
+    public static TemplateSnapshot build(Map<Path, Template> byFile, int cacheSize) {
+        // Файлы в отсортированном порядке: при совпадении маршрутов побеждает всегда один и тот же
+        Map<Path, Template> files = new TreeMap<>(byFile);
+        Map<String, Template> byKey = new LinkedHashMap<>();
+        RouteTrie trie = new RouteTrie();
+        for (Map.Entry<Path, Template> e : files.entrySet()) {
+            Template t = e.getValue();
+            byKey.put(t.method.toUpperCase() + " " + t.endpoint, t);
+            if (!trie.add(t)) {
+                logger.warn("Route {} {} from {} overrides an equivalent pattern", t.method.toUpperCase(), t.endpoint, e.getKey());
+            }
+        }
+        return new TemplateSnapshot(
+                Collections.unmodifiableMap(files),
+                Collections.unmodifiableMap(byKey),
+                trie,
+                new EndpointCache<>(cacheSize));
+    }
+}
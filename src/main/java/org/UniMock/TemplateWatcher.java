@@ -0,0 +1,111 @@
+package org.UniMock;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Следит за каталогом шаблонов (рекурсивно) и перезагружает только изменившиеся файлы.
+ * События копятся DEBOUNCE_MS, чтобы редактор, пишущий файл в несколько приёмов,
+ * давал одну перезагрузку. Переполнение очереди событий — полное пересканирование.
+ */
+public class TemplateWatcher implements Runnable {
+
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(TemplateWatcher.class);
+    private static final long DEBOUNCE_MS = 200;
+
+    private final WatchService watchService;
+
+    private TemplateWatcher(Path root) throws IOException {
+        this.watchService = root.getFileSystem().newWatchService();
+        registerTree(root);
+    }
+
+    /** Запускает наблюдение в фоновом daemon-потоке. */
+    public static void start(Path root) {
+        try {
+            Thread t = new Thread(new TemplateWatcher(root), "template-watcher");
+            t.setDaemon(true);
+            t.start();
+            System.out.println("👀 Watching templates in " + root.toAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("⚠️ Template hot reload disabled: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new HashSet<>();
+                boolean overflow = false;
+
+                // Собираем пачку событий, пока они идут чаще DEBOUNCE_MS
+                while (key != null) {
+                    overflow |= drain(key, changed);
+                    key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                }
+
+                if (overflow) AppLogic.reloadAll();
+                else if (!changed.isEmpty()) AppLogic.reloadFiles(changed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (Exception e) {
+                logger.warn("Template reload failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** @return true, если очередь событий переполнилась и изменения потеряны */
+    private boolean drain(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                // Новый подкаталог: начинаем следить и забираем файлы, появившиеся до регистрации
+                try {
+                    registerTree(path);
+                    try (var files = Files.walk(path)) {
+                        files.filter(Files::isRegularFile).forEach(changed::add);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Cannot watch {}: {}", path, e.getMessage());
+                }
+            } else if (event.kind() == ENTRY_DELETE) {
+                // Удалён файл или целый каталог — перебираем известные шаблоны под этим путём
+                changed.add(path);
+                AppLogic.templateFilesUnder(path).forEach(changed::add);
+            } else {
+                changed.add(path);
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -1,50 +1,111 @@
 package org.UniMock;
 
-import org.w3c.dom.*;
-import javax.xml.parsers.*;
 import javax.xml.xpath.*;
-import java.io.*;
-import java.util.Map;
-import java.util.Random;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.random.RandomGenerator;
 import java.util.regex.*;
+import com.fasterxml.jackson.core.JsonPointer;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class VarsGenerator {
 
-    private static final Random random = new Random();
+    private static final String CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    // XPathFactory не потокобезопасна — одна на приложение под монитором; нужна только при компиляции
+    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+
+    /** Строит генератор из condition при загрузке шаблона; ошибка выражения — IllegalArgumentException. */
+    @FunctionalInterface
+    public interface Factory {
+        CompiledVar compile(String condition);
+    }
+
+    private static final class Registration {
+        final Factory factory;
+        final Set<RequestInput.Part> reads;
+
+        Registration(Factory factory, Set<RequestInput.Part> reads) {
+            this.factory = factory;
+            this.reads = reads;
+        }
+    }
+
+    // Тип переменной → фабрика. Новые типы добавляются через register, без правки compile
+    private static final Map<String, Registration> REGISTRY = new ConcurrentHashMap<>();
+
+    static {
+        register("xmlParse", VarsGenerator::xmlParse, RequestInput.Part.BODY);
+        register("jsonParse", VarsGenerator::jsonParse, RequestInput.Part.BODY);
+        register("regexParse", VarsGenerator::regexParse, RequestInput.Part.BODY);
+        register("randomNum", VarsGenerator::randomNum);
+        register("randomString", VarsGenerator::randomString);
+        register("fixed", VarsGenerator::fixed);
+        register("reqHeader", VarsGenerator::reqHeader, RequestInput.Part.HEADERS);
+        register("reqParam", VarsGenerator::reqParam, RequestInput.Part.PARAMS);
+        register("reqPath", VarsGenerator::reqPath);
+        register("stateGet", VarsGenerator::stateGet);
+        register("uuid", VarsGenerator::uuid);
+        register("sequence", VarsGenerator::sequence);
+        register("timestamp", VarsGenerator::timestamp);
+        register("csv", Dataset::column);
+        register("firstName", FakeData::firstName);
+        register("lastName", FakeData::lastName);
+        register("fullName", FakeData::fullName);
+        register("email", FakeData::email);
+    }
 
     /**
-     * Универсальная точка вызова: вызывает нужный генератор по имени.
+     * Регистрирует тип переменной. Доступен шаблонам, загруженным после регистрации.
+     * @param reads какие части запроса читает генератор (см. Template.inputs)
+     */
+    public static void register(String type, Factory factory, RequestInput.Part... reads) {
+        Set<RequestInput.Part> parts = EnumSet.noneOf(RequestInput.Part.class);
+        parts.addAll(Arrays.asList(reads));
+        REGISTRY.put(type, new Registration(factory, Collections.unmodifiableSet(parts)));
+    }
+
+    /**
+     * Универсальная точка компиляции: по имени типа строит готовый генератор.
+     * Вызывается при загрузке шаблона, поэтому ошибки в выражениях видны сразу, а не на каждом запросе.
      * @param type тип генератора, например xmlParse, regexParse, randomNum
-     * @param body тело запроса (может быть XML, JSON, текст)
      * @param condition аргумент или выражение для генерации
+     * @throws IllegalArgumentException неизвестный тип или некорректное выражение
      */
-    public static String generate(String type,
-                                  String body,
-                                  String condition,
-                                  Map<String,String> reqHeaders,
-                                  Map<String,String> reqParams,
-                                  Map<String,String> reqPathVars) {
-        if (type == null) return "";
-        type = type.trim();
+    public static CompiledVar compile(String type, String condition) {
+        if (type == null) throw new IllegalArgumentException("variable type is missing");
+        Registration r = REGISTRY.get(type.trim());
+        if (r == null) throw new IllegalArgumentException("unknown variable type: " + type.trim());
+        return r.factory.compile(condition);
+    }
+
+    /** Известен ли тип генератора (для compile). */
+    public static boolean isType(String type) {
+        return type != null && REGISTRY.containsKey(type.trim());
+    }
+
+    /** Части запроса, которые читает генератор типа; неизвестный тип — ничего. */
+    public static Set<RequestInput.Part> reads(String type) {
+        Registration r = type != null ? REGISTRY.get(type.trim()) : null;
+        return r != null ? r.reads : Set.of();
+    }
+
+    /**
+     * Исполняет скомпилированный генератор для запроса.
+     * Ошибка на конкретном запросе (например, тело не XML) даёт пустое значение.
+     */
+    public static String generate(VarDef v, RequestContext ctx) {
         try {
-            switch (type) {
-                case "xmlParse": return xmlParse(body, condition);
-                case "jsonParse": return jsonParse(body, condition);
-                case "regexParse": return regexParse(body, condition);
-                case "randomNum": return randomNum(condition);
-                case "randomString": return randomString(condition);
-                case "fixed": return fixed(condition);
-                case "reqHeader": return reqHeader(reqHeaders, condition);
-                case "reqParam": return reqParam(reqParams, condition);
-                case "reqPath": return reqPath(reqPathVars, condition);
-                default:
-                    System.out.println("⚠️ Unknown variable type: " + type);
-                    return "";
-            }
+            String val = v.compiled.generate(ctx);
+            return val != null ? val : "";
         } catch (Exception e) {
-            System.out.println("⚠️ Error generating var for type=" + type + ": " + e.getMessage());
+            System.out.println("⚠️ Error generating var for type=" + v.type + ": " + e.getMessage());
             return "";
         }
     }
@@ -52,101 +113,252 @@ public class VarsGenerator {
     // --- Реализации генераторов ---
 
     /** 1️⃣ xmlParse(body, xpath) — возвращает значение по XPath из XML */
-    public static String xmlParse(String body, String xpathExpr) throws Exception {
-        if (body == null || body.isEmpty() || xpathExpr == null) return "";
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(false);
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(new ByteArrayInputStream(body.getBytes()));
-
-        XPath xpath = XPathFactory.newInstance().newXPath();
-        String val = xpath.evaluate(xpathExpr.trim(), doc);
-        return val != null ? val : "";
+    public static CompiledVar xmlParse(String xpathExpr) {
+        if (xpathExpr == null || xpathExpr.trim().isEmpty()) throw new IllegalArgumentException("xmlParse: empty XPath");
+        String expr = xpathExpr.trim();
+        XPathExpression first;
+        try {
+            first = compileXPath(expr); // проверка синтаксиса при загрузке
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException("xmlParse: invalid XPath '" + expr + "': " + e.getMessage(), e);
+        }
+        // XPathExpression не потокобезопасен — пул скомпилированных копий, не ThreadLocal:
+        // на виртуальных потоках ThreadLocal компилировал бы выражение на каждый запрос
+        ObjectPool<XPathExpression> compiled = new ObjectPool<>(() -> {
+            try {
+                return compileXPath(expr);
+            } catch (XPathExpressionException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        compiled.release(first);
+        return ctx -> {
+            if (ctx.streamsXml()) return ctx.streamedXml(expr);
+            if (ctx.body().isEmpty()) return "";
+            XPathExpression xpath = compiled.acquire();
+            try {
+                return xpath.evaluate(ctx.xml());
+            } finally {
+                compiled.release(xpath);
+            }
+        };
     }
 
     /** 2️⃣ jsonParse(body, path) — возвращает значение по JSON-пути вида "user/name" */
-    public static String jsonParse(String body, String condition) {
-        if (body == null || condition == null) return "";
-        try {
-            JsonNode root = new ObjectMapper().readTree(body);
-            String[] parts = condition.split("/");
-            JsonNode node = root;
-            for (String p : parts) {
-                if (p.isEmpty()) continue;
-                node = node.path(p);
-            }
+    public static CompiledVar jsonParse(String condition) {
+        if (condition == null) throw new IllegalArgumentException("jsonParse: empty path");
+        JsonPointer ptr = jsonPointer(condition);
+        String key = ptr.toString();
+        return ctx -> {
+            if (ctx.streamsJson()) return ctx.streamedJson(key);
+            JsonNode node = ctx.json().at(ptr);
             return node.isMissingNode() ? "" : node.asText();
-        } catch (Exception e) {
-            return "";
+        };
+    }
+
+    /** Путь вида "user/name" → JsonPointer "/user/name" (пустые сегменты пропускаются). */
+    static JsonPointer jsonPointer(String condition) {
+        StringBuilder pointer = new StringBuilder();
+        for (String p : condition.trim().split("/")) {
+            if (p.isEmpty()) continue;
+            pointer.append('/').append(p.replace("~", "~0"));
         }
+        return JsonPointer.compile(pointer.toString());
     }
 
     /** 3️⃣ regexParse(body, regex) — возвращает первую группу, если найдено совпадение */
-    public static String regexParse(String body, String regex) {
-        if (body == null || regex == null) return "";
+    public static CompiledVar regexParse(String regex) {
+        if (regex == null || regex.isEmpty()) throw new IllegalArgumentException("regexParse: empty regex");
+        Pattern pattern;
         try {
-            Pattern pattern = Pattern.compile(regex, Pattern.DOTALL);
-            Matcher matcher = pattern.matcher(body);
-            if (matcher.find()) {
-                if (matcher.groupCount() >= 1) {
-                    return matcher.group(1); // возвращаем первую захваченную группу
-                } else {
-                    return matcher.group(0);
-                }
-            }
-        } catch (Exception e) {
-            System.out.println("⚠️ regexParse failed: " + e.getMessage());
+            pattern = Pattern.compile(regex, Pattern.DOTALL);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("regexParse: invalid regex: " + e.getDescription(), e);
         }
-        return "";
+        int group = pattern.matcher("").groupCount() >= 1 ? 1 : 0; // первая захваченная группа, если есть
+        return ctx -> {
+            Matcher matcher = pattern.matcher(ctx.body());
+            if (!matcher.find()) return "";
+            String val = matcher.group(group);
+            return val != null ? val : "";
+        };
     }
 
     /** 4️⃣ randomNum("1000-9999") — случайное число в диапазоне */
-    public static String randomNum(String condition) {
-        if (condition == null || condition.isEmpty()) {
-            return String.valueOf(random.nextInt(1000));
-        }
-        String[] parts = condition.split("-");
+    public static CompiledVar randomNum(String condition) {
         int min = 0, max = 999;
-        try {
-            if (parts.length == 2) {
-                min = Integer.parseInt(parts[0].trim());
-                max = Integer.parseInt(parts[1].trim());
-            } else if (parts.length == 1) {
-                max = Integer.parseInt(parts[0].trim());
+        if (condition != null && !condition.isEmpty()) {
+            String[] parts = condition.split("-");
+            try {
+                if (parts.length == 2) {
+                    min = Integer.parseInt(parts[0].trim());
+                    max = Integer.parseInt(parts[1].trim());
+                } else if (parts.length == 1) {
+                    max = Integer.parseInt(parts[0].trim());
+                } else {
+                    throw new IllegalArgumentException("randomNum: expected 'min-max' or 'max', got '" + condition + "'");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("randomNum: invalid range '" + condition + "'", e);
             }
-        } catch (Exception ignored) {}
-        int value = min + random.nextInt(max - min + 1);
-        return String.valueOf(value);
+        }
+        if (max < min) throw new IllegalArgumentException("randomNum: max < min in '" + condition + "'");
+        int lo = min;
+        int bound = max - min + 1;
+        return ctx -> String.valueOf(lo + ctx.random().nextInt(bound));
     }
 
     /** 5️⃣ randomString("len=8") — случайная строка заданной длины */
-    public static String randomString(String condition) {
+    public static CompiledVar randomString(String condition) {
         int len = 6;
         if (condition != null && condition.startsWith("len=")) {
-            try { len = Integer.parseInt(condition.substring(4)); } catch (Exception ignored) {}
+            try {
+                len = Integer.parseInt(condition.substring(4).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("randomString: invalid length '" + condition + "'", e);
+            }
+            if (len < 0) throw new IllegalArgumentException("randomString: negative length '" + condition + "'");
         }
-        String chars = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-        StringBuilder sb = new StringBuilder(len);
-        for (int i = 0; i < len; i++) sb.append(chars.charAt(random.nextInt(chars.length())));
-        return sb.toString();
+        int length = len;
+        return ctx -> {
+            RandomGenerator random = ctx.random();
+            char[] out = new char[length];
+            for (int i = 0; i < length; i++) out[i] = CHARS.charAt(random.nextInt(CHARS.length()));
+            return new String(out);
+        };
     }
 
     /** 6️⃣ fixed("Hello") — просто возвращает значение */
-    public static String fixed(String condition) {
-        return condition == null ? "" : condition.trim();
+    public static CompiledVar fixed(String condition) {
+        String value = condition == null ? "" : condition.trim();
+        return ctx -> value;
     }
-    public static String reqHeader(Map<String,String> headers, String headerName) {
-        if (headers == null || headerName == null) return "";
-        return headers.getOrDefault(headerName, "");
+
+    public static CompiledVar reqHeader(String headerName) {
+        String name = nameOrFail("reqHeader", headerName);
+        return ctx -> ctx.header(name);
     }
 
-    public static String reqParam(Map<String,String> params, String paramName) {
-        if (params == null || paramName == null) return "";
-        return params.getOrDefault(paramName, "");
+    public static CompiledVar reqParam(String paramName) {
+        String name = nameOrFail("reqParam", paramName);
+        return ctx -> ctx.param(name);
     }
-    public static String reqPath(Map<String,String> pathVars, String varName) {
-        if (pathVars == null || varName == null) return "";
-        return pathVars.getOrDefault(varName, "");
+
+    public static CompiledVar reqPath(String varName) {
+        String name = nameOrFail("reqPath", varName);
+        return ctx -> ctx.pathVar(name);
+    }
+
+    /** stateGet("order:$id$") — значение из StateStore по ключу с подстановкой переменных; нет ключа — пусто */
+    public static CompiledVar stateGet(String keyTemplate) {
+        StateStore.Key key = StateStore.Key.parse(keyTemplate);
+        return ctx -> {
+            String v = StateStore.get(key.render(ctx.vars));
+            return v != null ? v : "";
+        };
+    }
+
+    /** uuid — случайный UUID v4 из источника случайности запроса (с Random seed — воспроизводимый) */
+    public static CompiledVar uuid(String condition) {
+        return ctx -> {
+            RandomGenerator random = ctx.random();
+            long hi = (random.nextLong() & ~0xF000L) | 0x4000L;                            // версия 4
+            long lo = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;    // вариант RFC 4122
+            return new UUID(hi, lo).toString();
+        };
+    }
+
+    // Именованные последовательности общие для всех шаблонов и переживают их перезагрузку
+    private static final Map<String, AtomicLong> SEQUENCES = new ConcurrentHashMap<>();
+
+    /**
+     * sequence("orders start=1000 step=10") — монотонный счётчик, каждый запрос получает новое значение.
+     * Без имени счётчик свой у переменной и начинается заново при перезагрузке шаблона.
+     * Именованный общий для шаблонов; start берётся из того объявления, что загрузилось первым.
+     */
+    public static CompiledVar sequence(String condition) {
+        String name = null;
+        long start = 1, step = 1;
+        for (String token : (condition == null ? "" : condition).trim().split("\\s+")) {
+            try {
+                if (token.isEmpty()) continue;
+                if (token.startsWith("start=")) start = Long.parseLong(token.substring(6));
+                else if (token.startsWith("step=")) step = Long.parseLong(token.substring(5));
+                else if (name == null) name = token;
+                else throw new IllegalArgumentException("sequence: unexpected '" + token + "'");
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("sequence: invalid number in '" + token + "'", e);
+            }
+        }
+        long first = start;
+        AtomicLong counter = name == null ? new AtomicLong(first) : SEQUENCES.computeIfAbsent(name, k -> new AtomicLong(first));
+        long delta = step;
+        return ctx -> Long.toString(counter.getAndAdd(delta));
     }
-}
 
+    /**
+     * timestamp("yyyy-MM-dd HH:mm:ss; UTC") — текущее время: iso, epochMillis, epochSeconds
+     * или шаблон DateTimeFormatter, после ";" — часовой пояс (по умолчанию системный).
+     * Форматтер строится один раз; для шаблонов без долей секунды строка переиспользуется в пределах секунды.
+     */
+    public static CompiledVar timestamp(String condition) {
+        String spec = condition == null || condition.isBlank() ? "iso" : condition.trim();
+        ZoneId zone = ZoneId.systemDefault();
+        int semi = spec.lastIndexOf(';');
+        if (semi >= 0) {
+            try {
+                zone = ZoneId.of(spec.substring(semi + 1).trim());
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("timestamp: invalid zone '" + spec.substring(semi + 1).trim() + "'", e);
+            }
+            spec = spec.substring(0, semi).trim();
+        }
+        switch (spec) {
+            case "epochMillis":  return ctx -> Long.toString(System.currentTimeMillis());
+            case "epochSeconds": return ctx -> Long.toString(System.currentTimeMillis() / 1000);
+            case "iso":          spec = "yyyy-MM-dd'T'HH:mm:ssXXX"; break;
+            default:             break;
+        }
+        DateTimeFormatter formatter;
+        try {
+            formatter = DateTimeFormatter.ofPattern(spec).withZone(zone);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("timestamp: invalid pattern '" + spec + "': " + e.getMessage(), e);
+        }
+        if (spec.matches(".*[SnNA].*")) {
+            return ctx -> formatter.format(Instant.now());
+        }
+        AtomicReference<Stamp> last = new AtomicReference<>(new Stamp(Long.MIN_VALUE, ""));
+        return ctx -> {
+            long second = Math.floorDiv(System.currentTimeMillis(), 1000);
+            Stamp s = last.get();
+            if (s.second == second) return s.text;
+            String text = formatter.format(Instant.ofEpochSecond(second));
+            last.set(new Stamp(second, text));
+            return text;
+        };
+    }
+
+    private static final class Stamp {
+        final long second;
+        final String text;
+
+        Stamp(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+
+    private static XPathExpression compileXPath(String expr) throws XPathExpressionException {
+        XPath xpath;
+        synchronized (XPATH_FACTORY) {
+            xpath = XPATH_FACTORY.newXPath();
+        }
+        return xpath.compile(expr);
+    }
+
+    private static String nameOrFail(String type, String name) {
+        if (name == null || name.isEmpty()) throw new IllegalArgumentException(type + ": name is missing");
+        return name;
+    }
+}
@@ -0,0 +1,111 @@
+package org.UniMock;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.slf4j.LoggerFactory;
+import spark.embeddedserver.jetty.HttpRequestWrapper;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обработка запросов на виртуальных потоках (thread.virtual=true, Java 21+).
+ *
+ * Заменяет spark.embeddedserver.jetty.JettyHandler: разбор HTTP, селекторы и акцепторы
+ * остаются на обычном пуле Jetty, а фильтр Spark для каждого запроса запускается на новом
+ * виртуальном потоке в async-режиме. Поток пула освобождается сразу, и число запросов
+ * в работе больше не ограничено thread.max.
+ *
+ * Задержку ответа (DEADLINE_ATTR) виртуальный поток просто пересыпает — таймер
+ * DelayedResponseHandler в этом режиме не нужен.
+ */
+public class VirtualThreadHandler extends HandlerWrapper {
+
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(VirtualThreadHandler.class);
+
+    private final Filter filter;
+    private final Executor executor;
+
+    public VirtualThreadHandler(Filter filter, Executor executor) {
+        this.filter = filter;
+        this.executor = executor;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() через reflection: сборка остаётся на Java 17,
+     * а режим доступен при запуске на 21+. null — JVM виртуальные потоки не поддерживает.
+     */
+    public static Executor virtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest,
+                       HttpServletRequest request, HttpServletResponse response) {
+        AsyncContext ctx = request.startAsync();
+        ctx.setTimeout(0);
+        baseRequest.setHandled(true);
+        executor.execute(() -> {
+            try {
+                handleBlocking(request, response, ctx);
+            } catch (Exception e) {
+                logger.warn("Request {} {} failed: {}", request.getMethod(), target, e.toString());
+                if (!response.isCommitted()) {
+                    try {
+                        response.sendError(500);
+                    } catch (Exception ignored) {
+                        // клиент уже ушёл
+                    }
+                }
+            } finally {
+                EndpointLimiter.releaseFor(request);
+                try {
+                    ctx.complete();
+                } catch (IllegalStateException e) {
+                    // соединение уже оборвано (сбой reset/partial/stall), как в DelayedResponseHandler
+                }
+            }
+        });
+    }
+
+    // То же, что JettyHandler + DelayedResponseHandler, но с ожиданием прямо на потоке
+    private void handleBlocking(HttpServletRequest request, HttpServletResponse response, AsyncContext ctx) throws Exception {
+        HttpRequestWrapper wrapped = new HttpRequestWrapper(request);
+        DelayedResponseHandler.DeferredResponse deferred = new DelayedResponseHandler.DeferredResponse(request, response);
+        filter.doFilter(wrapped, deferred, null);
+
+        if (wrapped.notConsumed()) {
+            if (!response.isCommitted()) response.sendError(404);
+            return;
+        }
+        if (!deferred.isBuffered()) return;
+
+        long sleepStart = System.nanoTime();
+        Long deadline = (Long) request.getAttribute(DelayedResponseHandler.DEADLINE_ATTR);
+        long wait = deadline != null ? deadline - sleepStart : 0;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+            Metrics.TemplateMetrics metrics = (Metrics.TemplateMetrics) request.getAttribute(DelayedResponseHandler.METRICS_ATTR);
+            if (metrics != null) metrics.record(Metrics.Phase.delay, System.nanoTime() - sleepStart);
+        }
+        FaultInjector.Fault fault = (FaultInjector.Fault) request.getAttribute(DelayedResponseHandler.FAULT_ATTR);
+        if (fault != null) {
+            // сбой асинхронный (таймер), виртуальный поток просто ждёт его конца
+            CompletableFuture<Void> played = new CompletableFuture<>();
+            FaultInjector.execute(fault, request, response, deferred.bufferedBody(), ctx, () -> played.complete(null));
+            played.join();
+            return;
+        }
+        deferred.writeTo(response);   // тело-файл с ограничением полосы тоже пересыпается здесь
+    }
+}